@@ -0,0 +1,197 @@
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+
+/**
+ * Picks random indexes according to a fixed set of weights, in constant time
+ * per pick, using Vose's alias method.
+ * <p>
+ * The tables are built once, in linear time. Each pick then needs a single
+ * random number and a single table lookup: the number selects a column and
+ * is compared with that column's threshold, to pick either the column itself
+ * or its alias. Nothing is allocated per pick, and the sampler is safe to use
+ * from any number of threads.
+ * <p>
+ * For weights that change while sampling, use {@link DynamicWeightedSampler}
+ * instead.
+ *
+ * @author Christian
+ */
+public final class AliasSampler {
+
+    /**
+     * The probability of keeping each column, scaled to the whole unsigned
+     * {@code long} range.
+     */
+    private final long[] thresholds;
+
+    private final int[] aliases;
+
+
+    /**
+     * Creates a sampler for the given weights.
+     *
+     * @param weights The weight of each index, which must be finite and not
+     * negative, with at least one of them positive
+     */
+    public AliasSampler(double[] weights) {
+        int n = weights.length;
+        if (n == 0) {
+            throw new IllegalArgumentException("There must be at least one weight");
+        }
+
+        double total = 0;
+        for (double weight : weights) {
+            if (!(weight >= 0) || Double.isInfinite(weight)) {
+                throw new IllegalArgumentException("Invalid weight: " + weight);
+            }
+            total += weight;
+        }
+        if (!(total > 0) || Double.isInfinite(total)) {
+            throw new IllegalArgumentException("The total weight must be positive and finite: " + total);
+        }
+
+        this.thresholds = new long[n];
+        this.aliases = new int[n];
+
+        // Scale the weights so the average is 1, and split them into columns below and above it
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            if (scaled[i] < 1.0) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+
+        // Fill up each small column with the excess of a large one
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+
+            thresholds[less] = toThreshold(scaled[less]);
+            aliases[less] = more;
+
+            scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+            if (scaled[more] < 1.0) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+
+        // Whatever is left is 1 apart from rounding errors, and always keeps its own column
+        while (largeCount > 0) {
+            int column = large[--largeCount];
+            thresholds[column] = -1L;
+            aliases[column] = column;
+        }
+        while (smallCount > 0) {
+            int column = small[--smallCount];
+            thresholds[column] = -1L;
+            aliases[column] = column;
+        }
+    }
+
+
+    /**
+     * Creates a sampler for the given integer weights.
+     *
+     * @param weights The weight of each index, which must not be negative,
+     * with at least one of them positive
+     */
+    public AliasSampler(int[] weights) {
+        this(toDoubles(weights));
+    }
+
+
+    private static double[] toDoubles(int[] weights) {
+        double[] doubles = new double[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            doubles[i] = weights[i];
+        }
+        return doubles;
+    }
+
+
+    /**
+     * Converts the probability of keeping a column into a threshold for the
+     * lower 64 bits of the random product.
+     */
+    private static long toThreshold(double probability) {
+        if (probability >= 1.0) {
+            return -1L;
+        }
+        // 2^64 * probability, as an unsigned value
+        double scaled = probability * 0x1.0p64;
+        return scaled >= 0x1.0p63 ? (long) (scaled - 0x1.0p63) ^ Long.MIN_VALUE : (long) scaled;
+    }
+
+
+    /**
+     * Picks a random index, using the random generator of the current thread.
+     *
+     * @return An index, picked with a probability proportional to its weight
+     */
+    public int sample() {
+        return sample(ThreadLocalRandom.current().nextLong());
+    }
+
+
+    /**
+     * Picks a random index, using the given random generator.
+     *
+     * @param random The generator to draw from
+     * @return An index, picked with a probability proportional to its weight
+     */
+    public int sample(Random random) {
+        return sample(random.nextLong());
+    }
+
+
+    /**
+     * Picks an index, using 64 random bits supplied by the caller, for
+     * example from {@link Randomize#randomAt(long, long)}.
+     * <p>
+     * The bits are multiplied by the number of columns: the upper half of the
+     * product picks the column, and the lower half, which is still uniformly
+     * distributed, decides between the column and its alias.
+     *
+     * @param bits 64 random bits
+     * @return An index, picked with a probability proportional to its weight
+     */
+    public int sample(long bits) {
+        long n = thresholds.length;
+        int column = (int) Randomize.unsignedMultiplyHigh(bits, n);
+        long fraction = bits * n;
+        return Long.compareUnsigned(fraction, thresholds[column]) < 0 ? column : aliases[column];
+    }
+
+
+    /**
+     * Fills an array with random indexes.
+     *
+     * @param target The array to fill
+     * @see #sample()
+     */
+    public void fill(int[] target) {
+        long state = ThreadLocalRandom.current().nextLong();
+        for (int i = 0; i < target.length; i++) {
+            target[i] = sample(Randomize.mix64(state += Randomize.GOLDEN_GAMMA));
+        }
+    }
+
+
+    /**
+     * @return How many indexes the sampler picks from
+     */
+    public int size() {
+        return thresholds.length;
+    }
+}
@@ -0,0 +1,175 @@
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+
+/**
+ * Picks each element of a stream independently with a fixed probability, for
+ * example to keep 1% of all events.
+ * <p>
+ * Rather than drawing a random number for every element, the sampler draws
+ * the distance to the next picked element from the matching geometric
+ * distribution. The elements in between only cost a counter decrement, so at
+ * a probability of 1%, the generator is called a hundred times less often,
+ * while the result is exactly the same as flipping a coin for each element.
+ * <p>
+ * A sampler is not thread-safe, so the stream filters are only meant for
+ * sequential streams.
+ *
+ * @author Christian
+ */
+public final class BernoulliSampler {
+
+    private final double probability;
+
+    /**
+     * The logarithm of the probability of skipping an element, the divisor of
+     * every geometric draw.
+     */
+    private final double logSkipProbability;
+
+    private final Random random;
+
+    /**
+     * How many elements to skip before picking the next one.
+     */
+    private long remaining;
+
+
+    /**
+     * Creates a sampler using the random generator of the current thread.
+     *
+     * @param probability The probability of picking each element, from 0.0 up
+     * to and including 1.0
+     */
+    public BernoulliSampler(double probability) {
+        this(probability, null);
+    }
+
+
+    /**
+     * Creates a sampler using the given random generator.
+     *
+     * @param probability The probability of picking each element, from 0.0 up
+     * to and including 1.0
+     * @param random The generator to draw from, or {@code null} to use the one
+     * of the current thread
+     */
+    public BernoulliSampler(double probability, Random random) {
+        if (!(probability >= 0 && probability <= 1)) {
+            throw new IllegalArgumentException("Invalid probability: " + probability);
+        }
+        this.probability = probability;
+        this.logSkipProbability = Math.log1p(-probability);
+        this.random = random;
+        this.remaining = skip();
+    }
+
+
+    /**
+     * Decides whether to pick the next element.
+     *
+     * @return Whether the element is picked
+     */
+    public boolean sample() {
+        if (remaining > 0) {
+            remaining--;
+            return false;
+        }
+        remaining = skip();
+        return true;
+    }
+
+
+    /**
+     * Draws how many elements to skip before the next picked one, for loops
+     * that can jump ahead over an array or a file by themselves:
+     * <pre>
+     * long i = 0;
+     * while (true) {
+     *     long skip = sampler.skip();
+     *     if (skip &gt;= length - i) {
+     *         break;
+     *     }
+     *     i += skip;
+     *     process(i++);
+     * }
+     * </pre>
+     * The skip is compared with the remaining length before it is added,
+     * since it saturates at {@link Long#MAX_VALUE}, which would overflow the
+     * index. This is independent of {@link #sample()}, and shouldn't be mixed
+     * with it for the same stream.
+     *
+     * @return The number of elements to skip, or {@link Long#MAX_VALUE} if it
+     * is too large for a {@code long}, which is always the case at a
+     * probability of 0, and can happen at very small ones
+     */
+    public long skip() {
+        Random generator = random != null ? random : ThreadLocalRandom.current();
+        double value;
+        do {
+            value = generator.nextDouble();
+        } while (value == 0);
+
+        // At a probability of 1, this divides by minus infinity, and always gives 0
+        double skip = Math.floor(Math.log(value) / logSkipProbability);
+        return skip < Long.MAX_VALUE ? (long) skip : Long.MAX_VALUE;
+    }
+
+
+    /**
+     * Keeps the picked elements of a sequential stream.
+     *
+     * @param <T> The type of the elements
+     * @param stream The stream to sample
+     * @return A stream of the picked elements
+     */
+    public <T> Stream<T> filter(Stream<T> stream) {
+        return stream.filter(element -> sample());
+    }
+
+
+    /**
+     * Keeps the picked values of a sequential stream.
+     *
+     * @param stream The stream to sample
+     * @return A stream of the picked values
+     */
+    public IntStream filter(IntStream stream) {
+        return stream.filter(value -> sample());
+    }
+
+
+    /**
+     * Keeps the picked values of a sequential stream.
+     *
+     * @param stream The stream to sample
+     * @return A stream of the picked values
+     */
+    public LongStream filter(LongStream stream) {
+        return stream.filter(value -> sample());
+    }
+
+
+    /**
+     * Keeps the picked values of a sequential stream.
+     *
+     * @param stream The stream to sample
+     * @return A stream of the picked values
+     */
+    public DoubleStream filter(DoubleStream stream) {
+        return stream.filter(value -> sample());
+    }
+
+
+    /**
+     * @return The probability of picking each element
+     */
+    public double getProbability() {
+        return probability;
+    }
+}
@@ -0,0 +1,133 @@
+
+
+/**
+ * Hands out unique ID-numbers from per-thread blocks leased from
+ * {@link IdGenerator}.
+ * <p>
+ * Each thread reserves a contiguous block of numbers in one atomic step, and
+ * then hands them out locally without touching any shared state until the
+ * block runs out. This removes the shared counter as a point of contention
+ * when many cores generate ID's at the same time.
+ * <p>
+ * The block size grows while a thread uses up its blocks quickly, and shrinks
+ * back towards the initial size when it slows down. The numbers are globally
+ * unique, since every block comes from the same counter as
+ * {@link IdGenerator#nextId()}, but they are only ordered within a single
+ * thread. Numbers left in the block of a thread that stops are never used.
+ *
+ * @author Christian
+ */
+public final class BlockIdGenerator {
+
+    /**
+     * The block size a thread starts out with, unless another one is given.
+     * <p>
+     * The current value is '{@value #DEFAULT_INITIAL_BLOCK_SIZE}'
+     */
+    public static final int DEFAULT_INITIAL_BLOCK_SIZE = 1024;
+
+    /**
+     * The largest block size a thread can grow to, unless another one is
+     * given.
+     * <p>
+     * The current value is '{@value #DEFAULT_MAX_BLOCK_SIZE}'
+     */
+    public static final int DEFAULT_MAX_BLOCK_SIZE = 1 << 20;
+
+    /**
+     * If a block is used up faster than this, the next block is twice as
+     * large. If it lasts {@value #SHRINK_FACTOR} times longer, the next one is
+     * half the size.
+     */
+    private static final long TARGET_BLOCK_NANOS = 1_000_000L;
+
+    private static final long SHRINK_FACTOR = 64;
+
+    private final int initialBlockSize;
+
+    private final int maxBlockSize;
+
+    private final ThreadLocal<Lease> leases = ThreadLocal.withInitial(Lease::new);
+
+
+    /**
+     * Creates a generator using the default block sizes of
+     * {@value #DEFAULT_INITIAL_BLOCK_SIZE} and
+     * {@value #DEFAULT_MAX_BLOCK_SIZE}.
+     */
+    public BlockIdGenerator() {
+        this(DEFAULT_INITIAL_BLOCK_SIZE, DEFAULT_MAX_BLOCK_SIZE);
+    }
+
+
+    /**
+     * Creates a generator with custom block sizes. Use the same value for both
+     * to disable the adaptive sizing.
+     *
+     * @param initialBlockSize The block size each thread starts out with
+     * @param maxBlockSize The largest block size a thread can grow to
+     */
+    public BlockIdGenerator(int initialBlockSize, int maxBlockSize) {
+        if (initialBlockSize < 1 || maxBlockSize < initialBlockSize) {
+            throw new IllegalArgumentException("Invalid block sizes: " + initialBlockSize + " to " + maxBlockSize);
+        }
+        this.initialBlockSize = initialBlockSize;
+        this.maxBlockSize = maxBlockSize;
+    }
+
+
+    /**
+     * Return the next ID-number from the block leased by the current thread,
+     * leasing a new block first if it has run out.
+     *
+     * @return The generated, unique ID
+     */
+    public long nextId() {
+        Lease lease = leases.get();
+        if (lease.next == lease.limit) {
+            renew(lease);
+        }
+        return lease.next++;
+    }
+
+
+    /**
+     * Leases a new block for the current thread, adjusting the block size to
+     * how fast the previous one was used up.
+     *
+     * @param lease The exhausted lease of the current thread
+     */
+    private void renew(Lease lease) {
+        long now = System.nanoTime();
+
+        if (lease.leasedAt != 0) {
+            long elapsed = now - lease.leasedAt;
+            if (elapsed < TARGET_BLOCK_NANOS) {
+                lease.blockSize = (int) Math.min(maxBlockSize, lease.blockSize * 2L);
+            } else if (elapsed > TARGET_BLOCK_NANOS * SHRINK_FACTOR) {
+                lease.blockSize = Math.max(initialBlockSize, lease.blockSize / 2);
+            }
+        } else {
+            lease.blockSize = initialBlockSize;
+        }
+
+        lease.next = IdGenerator.reserve(lease.blockSize);
+        lease.limit = lease.next + lease.blockSize;
+        lease.leasedAt = now;
+    }
+
+
+    /**
+     * The block currently leased by a single thread.
+     */
+    private static final class Lease {
+
+        private long next;
+
+        private long limit;
+
+        private int blockSize;
+
+        private long leasedAt;
+    }
+}
@@ -0,0 +1,297 @@
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.StampedLock;
+
+
+/**
+ * Picks random indexes according to a set of weights that can change while
+ * sampling, such as the weights of backends in an adaptive load balancer.
+ * <p>
+ * The weights are kept in a Fenwick tree of running sums, so both changing a
+ * weight and picking an index take O(log n) time. Picks don't take a lock:
+ * they read the tree optimistically, and only retry under a read lock if a
+ * weight was changed at the same time. Weight changes are serialized, and are
+ * meant to come from a single writer.
+ * <p>
+ * For weights that never change, {@link AliasSampler} picks in constant time.
+ *
+ * @author Christian
+ */
+public final class DynamicWeightedSampler {
+
+    private final int size;
+
+    private final double[] weights;
+
+    /**
+     * The Fenwick tree, where element {@code i} (counting from 1) holds the
+     * sum of the {@code i & -i} weights ending at index {@code i - 1}.
+     */
+    private final double[] tree;
+
+    /**
+     * The largest power of two not above the size, where the descent through
+     * the tree starts.
+     */
+    private final int topStep;
+
+    private final StampedLock lock = new StampedLock();
+
+    private double total;
+
+    /**
+     * How many weights are positive. The total drifts by rounding, so this
+     * decides whether there is anything to pick, and the tree is rebuilt
+     * exactly once it drops to zero.
+     */
+    private int positiveCount;
+
+    /**
+     * Updating the running sums with differences slowly accumulates rounding
+     * errors, so the tree is rebuilt from the weights after this many updates.
+     */
+    private int updatesUntilRebuild;
+
+
+    /**
+     * Creates a sampler where every weight starts at zero.
+     *
+     * @param size How many indexes to pick from
+     */
+    public DynamicWeightedSampler(int size) {
+        this(new double[size]);
+    }
+
+
+    /**
+     * Creates a sampler with the given initial weights.
+     *
+     * @param weights The weight of each index, which must be finite and not
+     * negative
+     */
+    public DynamicWeightedSampler(double[] weights) {
+        if (weights.length == 0) {
+            throw new IllegalArgumentException("There must be at least one weight");
+        }
+        for (double weight : weights) {
+            checkWeight(weight);
+        }
+
+        this.size = weights.length;
+        this.weights = weights.clone();
+        this.tree = new double[size + 1];
+        this.topStep = Integer.highestOneBit(size);
+        rebuild();
+    }
+
+
+    /**
+     * Changes the weight of an index.
+     *
+     * @param index The index to change
+     * @param weight The new weight, which must be finite and not negative
+     */
+    public void updateWeight(int index, double weight) {
+        checkIndex(index);
+        checkWeight(weight);
+
+        long stamp = lock.writeLock();
+        try {
+            double previous = weights[index];
+            double delta = weight - previous;
+            weights[index] = weight;
+            if (previous > 0 != weight > 0) {
+                positiveCount += weight > 0 ? 1 : -1;
+            }
+
+            if (--updatesUntilRebuild <= 0 || positiveCount == 0) {
+                rebuild();
+            } else {
+                for (int i = index + 1; i <= size; i += i & -i) {
+                    tree[i] += delta;
+                }
+                total += delta;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+
+    /**
+     * Replaces every weight at once, in linear time.
+     *
+     * @param newWeights The new weights, one for each index
+     */
+    public void updateWeights(double[] newWeights) {
+        if (newWeights.length != size) {
+            throw new IllegalArgumentException("Expected " + size + " weights, got " + newWeights.length);
+        }
+        for (double weight : newWeights) {
+            checkWeight(weight);
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            System.arraycopy(newWeights, 0, weights, 0, size);
+            rebuild();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+
+    /**
+     * Returns the current weight of an index.
+     *
+     * @param index The index
+     * @return The weight of the index
+     */
+    public double getWeight(int index) {
+        checkIndex(index);
+
+        long stamp = lock.tryOptimisticRead();
+        double weight = weights[index];
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                weight = weights[index];
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return weight;
+    }
+
+
+    /**
+     * Picks a random index, using the random generator of the current thread.
+     *
+     * @return An index, picked with a probability proportional to its weight
+     * @throws IllegalStateException If every weight is zero
+     */
+    public int sample() {
+        return sample(ThreadLocalRandom.current());
+    }
+
+
+    /**
+     * Picks a random index, using the given random generator.
+     *
+     * @param random The generator to draw from
+     * @return An index, picked with a probability proportional to its weight
+     * @throws IllegalStateException If every weight is zero
+     */
+    public int sample(Random random) {
+        double fraction = random.nextDouble();
+
+        long stamp = lock.tryOptimisticRead();
+        int index = find(fraction);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                index = find(fraction);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        if (index < 0) {
+            throw new IllegalStateException("Can't pick an index when every weight is zero");
+        }
+        return index;
+    }
+
+
+    /**
+     * Descends through the tree to the index whose share of the total weight
+     * contains the given fraction. It must not fail when reading the arrays
+     * while they are being changed, since the result is thrown away then.
+     *
+     * @param fraction A value from 0.0 (inclusive) up to 1.0 (exclusive)
+     * @return The index, which always has a positive weight, or {@code -1}
+     * if every weight is zero
+     */
+    private int find(double fraction) {
+        if (positiveCount == 0) {
+            return -1;
+        }
+
+        // A total that drifted to zero or below still ends on a positive weight, through the search after the descent
+        double remaining = Math.max(fraction * total, 0);
+        int position = 0;
+        for (int step = topStep; step > 0; step >>= 1) {
+            int next = position + step;
+            if (next <= size && tree[next] <= remaining) {
+                position = next;
+                remaining -= tree[next];
+            }
+        }
+
+        // Rounding can step past the last index, or onto an index without weight, so fall back to the nearest one with weight
+        if (position >= size) {
+            position = size - 1;
+        }
+        for (int distance = 0; distance < size; distance++) {
+            int right = position + distance;
+            if (right < size && weights[right] > 0) {
+                return right;
+            }
+            int left = position - distance;
+            if (left >= 0 && weights[left] > 0) {
+                return left;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Recalculates the tree, the total and the number of positive weights
+     * from the weights, in linear time.
+     * Must be called while holding the write lock.
+     */
+    private void rebuild() {
+        double sum = 0;
+        int positive = 0;
+        for (int i = 1; i <= size; i++) {
+            tree[i] = weights[i - 1];
+            sum += weights[i - 1];
+            if (weights[i - 1] > 0) {
+                positive++;
+            }
+        }
+        for (int i = 1; i <= size; i++) {
+            int parent = i + (i & -i);
+            if (parent <= size) {
+                tree[parent] += tree[i];
+            }
+        }
+        total = sum;
+        positiveCount = positive;
+        updatesUntilRebuild = size;
+    }
+
+
+    /**
+     * @return How many indexes the sampler picks from
+     */
+    public int size() {
+        return size;
+    }
+
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + size + " weights");
+        }
+    }
+
+
+    private static void checkWeight(double weight) {
+        if (!(weight >= 0) || Double.isInfinite(weight)) {
+            throw new IllegalArgumentException("Invalid weight: " + weight);
+        }
+    }
+}
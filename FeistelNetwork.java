@@ -0,0 +1,89 @@
+
+
+/**
+ * A keyed, reversible permutation of all numbers of a given even number of
+ * bits, built as a balanced Feistel network: each round replaces one half of
+ * the bits with itself XOR a keyed hash of the other half, which can always
+ * be undone by running the rounds backwards.
+ * <p>
+ * The hash is the SplitMix64 finalizer of the half mixed with a round key,
+ * of which the upper bits are used, since they depend on every input bit.
+ * Six rounds give orders that look random, but not cryptographically strong
+ * ones. {@link PublicIdCodec} uses the network over all 64 bits, and
+ * {@link RandomPermutation} over the smallest width covering its range.
+ *
+ * @author Christian
+ */
+final class FeistelNetwork {
+
+    private static final int ROUNDS = 6;
+
+    private final int halfBits;
+
+    private final long halfMask;
+
+    private final long[] roundKeys = new long[ROUNDS];
+
+
+    /**
+     * Creates a network for the given key and width.
+     *
+     * @param key The key that decides the permutation
+     * @param halfBits Half of the number of bits, from 1 to 32
+     */
+    FeistelNetwork(long key, int halfBits) {
+        if (halfBits < 1 || halfBits > Integer.SIZE) {
+            throw new IllegalArgumentException("Invalid number of bits per half: " + halfBits);
+        }
+        this.halfBits = halfBits;
+        this.halfMask = -1L >>> (Long.SIZE - halfBits);
+
+        // Derive independent round keys from the single key, using the SplitMix64 sequence
+        long state = key;
+        for (int i = 0; i < ROUNDS; i++) {
+            state += Randomize.GOLDEN_GAMMA;
+            roundKeys[i] = Randomize.mix64(state);
+        }
+    }
+
+
+    /**
+     * Permutes a number.
+     *
+     * @param value A number of the network's width
+     * @return The permuted number, of the same width
+     */
+    long encrypt(long value) {
+        long left = value >>> halfBits;
+        long right = value & halfMask;
+        for (int i = 0; i < ROUNDS; i++) {
+            long next = left ^ round(right, roundKeys[i]);
+            left = right;
+            right = next;
+        }
+        return (left << halfBits) | right;
+    }
+
+
+    /**
+     * Reverses {@link #encrypt(long)}.
+     *
+     * @param value A permuted number
+     * @return The original number
+     */
+    long decrypt(long value) {
+        long left = value >>> halfBits;
+        long right = value & halfMask;
+        for (int i = ROUNDS - 1; i >= 0; i--) {
+            long previous = right ^ round(left, roundKeys[i]);
+            right = left;
+            left = previous;
+        }
+        return (left << halfBits) | right;
+    }
+
+
+    private long round(long half, long roundKey) {
+        return Randomize.mix64(half ^ roundKey) >>> (Long.SIZE - halfBits);
+    }
+}
@@ -0,0 +1,367 @@
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+
+/**
+ * A sequence of numbers without gaps, such as invoice numbers, that is
+ * audited in a local write-ahead log and survives crashes.
+ * <p>
+ * Every number is appended to the log and flushed to disk before it is handed
+ * out, so a number that a caller has received is never handed out again, and
+ * the sequence continues from the last logged number after a restart. The
+ * first number of a new log is 1.
+ * <p>
+ * The log is written and flushed by a dedicated writer thread. Callers that
+ * arrive while a flush is in progress are collected into the next batch,
+ * which is written and flushed as one (group commit). The cost of a flush is
+ * shared by every number in the batch, so throughput grows with the number of
+ * concurrent callers instead of being limited to one flush per number.
+ * <p>
+ * Since callers never touch the log themselves, interrupting one can't close
+ * the log the way it would close an interruptible channel used by that
+ * thread. A caller that is interrupted while it waits still receives its
+ * number, since it is already in the log, and returns with its interrupt
+ * status set.
+ * <p>
+ * If writing the log fails, the records of the failed batch are cut off
+ * again, and the sequence stops handing out numbers for good. A crash between
+ * writing a batch and flushing it can still leave numbers in the log that no
+ * caller received; the sequence then continues after them.
+ *
+ * @author Christian
+ */
+public final class GapFreeSequence implements Closeable {
+
+    /**
+     * Each record holds the number, followed by a CRC32 checksum of it so that
+     * a record torn by a crash can be detected.
+     */
+    private static final int RECORD_SIZE = Long.BYTES + Integer.BYTES;
+
+    private static final int INITIAL_BATCH_CAPACITY = 256;
+
+    private final FileChannel log;
+
+    /**
+     * The only thread that writes to the log, so that interrupting a caller
+     * can't close it.
+     */
+    private final Thread writer;
+
+    private final Object lock = new Object();
+
+    private final CRC32 checksum = new CRC32();
+
+    /**
+     * The records appended since the last batch was taken for flushing.
+     */
+    private ByteBuffer pending = ByteBuffer.allocate(RECORD_SIZE * INITIAL_BATCH_CAPACITY);
+
+    /**
+     * The buffer the next batch will be collected in, or {@code null} while it
+     * is being flushed.
+     */
+    private ByteBuffer spare = ByteBuffer.allocate(RECORD_SIZE * INITIAL_BATCH_CAPACITY);
+
+    private long assigned;
+
+    private long durable;
+
+    /**
+     * The length of the log up to the end of the last durable record, where a
+     * failed batch is cut off. Only used by the writer thread.
+     */
+    private long durableLength;
+
+    /**
+     * Whether the writer thread is busy with a batch, after which it takes
+     * the next one without having to be woken up.
+     */
+    private boolean flushing;
+
+    private boolean closed;
+
+    private IOException failure;
+
+
+    /**
+     * Opens the sequence stored in the given log, replaying it to find the
+     * last number handed out. The log is created if it doesn't exist.
+     * <p>
+     * A record that was only partially written when the process crashed is
+     * cut off, since its number was never handed out. Only one sequence, in
+     * one process, may use the same log at a time, so the log is locked until
+     * the sequence is closed.
+     *
+     * @param file The write-ahead log
+     * @throws IOException If the log can't be opened, read or repaired, or is
+     * already in use by another sequence
+     */
+    public GapFreeSequence(Path file) throws IOException {
+        this.log = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            PersistentIdGenerator.lock(log, file);
+            long validLength = replay();
+            if (validLength < log.size()) {
+                log.truncate(validLength);
+                log.force(true);
+            }
+            log.position(validLength);
+            this.durableLength = validLength;
+        } catch (IOException | RuntimeException ex) {
+            log.close();
+            throw ex;
+        }
+        this.durable = assigned;
+
+        this.writer = new Thread(this::writeBatches, "GapFreeSequence writer for " + file);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+
+    /**
+     * Reads through the log and restores the last number from it.
+     *
+     * @return The length of the log up to the end of the last valid record
+     * @throws IOException If the log can't be read
+     */
+    private long replay() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 1024);
+        long position = 0;
+
+        while (log.read(buffer, position + buffer.position()) > 0) {
+            buffer.flip();
+            while (buffer.remaining() >= RECORD_SIZE) {
+                long number = buffer.getLong();
+                int storedChecksum = buffer.getInt();
+                if (storedChecksum != checksumOf(number) || number != assigned + 1) {
+                    return position;
+                }
+                assigned = number;
+                position += RECORD_SIZE;
+            }
+            buffer.compact();
+        }
+        return position;
+    }
+
+
+    /**
+     * Returns the next number in the sequence, once it has been flushed to the
+     * log.
+     *
+     * @return The next number, exactly one higher than the previous one
+     * @throws UncheckedIOException If the log could not be written
+     * @throws IllegalStateException If the sequence has been closed
+     */
+    public long next() {
+        long number;
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("The sequence has been closed");
+            }
+            checkFailure();
+            number = ++assigned;
+            append(number);
+            if (!flushing) {
+                lock.notifyAll();
+            }
+        }
+        awaitDurable(number);
+        return number;
+    }
+
+
+    /**
+     * Returns the last number that has been flushed to the log.
+     *
+     * @return The last durable number, or 0 if none have been handed out
+     */
+    public long current() {
+        synchronized (lock) {
+            return durable;
+        }
+    }
+
+
+    private void append(long number) {
+        if (pending.remaining() < RECORD_SIZE) {
+            ByteBuffer larger = ByteBuffer.allocate(pending.capacity() * 2);
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+        pending.putLong(number).putInt(checksumOf(number));
+    }
+
+
+    /**
+     * Waits until the writer thread has made the given number durable.
+     *
+     * @param number The number that has to be durable
+     */
+    private void awaitDurable(long number) {
+        boolean interrupted = false;
+        try {
+            synchronized (lock) {
+                while (durable < number) {
+                    checkFailure();
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException ex) {
+                        // The number is already in the log, so we can't abandon it
+                        interrupted = true;
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    /**
+     * The loop of the writer thread, which writes and flushes everything
+     * collected since the last batch, until the sequence is closed and
+     * nothing is left, or the log fails.
+     */
+    private void writeBatches() {
+        while (true) {
+            ByteBuffer batch;
+            long batchEnd;
+
+            synchronized (lock) {
+                flushing = false;
+                while (pending.position() == 0 && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException ex) {
+                        // Nothing in this class interrupts the writer, it only stops once closed
+                    }
+                }
+                if (pending.position() == 0) {
+                    return;
+                }
+
+                flushing = true;
+                batch = pending;
+                batchEnd = assigned;
+                pending = spare;
+                spare = null;
+            }
+
+            IOException error = null;
+            try {
+                batch.flip();
+                while (batch.hasRemaining()) {
+                    log.write(batch);
+                }
+                log.force(false);
+                durableLength += batch.limit();
+            } catch (IOException ex) {
+                error = ex;
+                rollBack(error);
+            }
+
+            synchronized (lock) {
+                batch.clear();
+                spare = batch;
+                if (error == null) {
+                    durable = batchEnd;
+                } else {
+                    failure = error;
+                    flushing = false;
+                }
+                lock.notifyAll();
+                if (error != null) {
+                    return;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Cuts a failed batch off the log, so that its numbers, which no caller
+     * will receive, can't be replayed as handed out after a restart.
+     *
+     * @param error The failure of the batch, to which a failure to cut it off
+     * is added
+     */
+    private void rollBack(IOException error) {
+        try {
+            log.truncate(durableLength);
+            log.force(false);
+            log.position(durableLength);
+        } catch (IOException ex) {
+            error.addSuppressed(ex);
+        }
+    }
+
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new UncheckedIOException("The write-ahead log failed, no more numbers can be handed out", failure);
+        }
+    }
+
+
+    private int checksumOf(long number) {
+        checksum.reset();
+        for (int shift = Long.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+            checksum.update((int) (number >>> shift));
+        }
+        return (int) checksum.getValue();
+    }
+
+
+    /**
+     * Flushes any numbers that are still pending, stops the writer thread,
+     * and closes the log.
+     *
+     * @throws IOException If the log can't be flushed or closed
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lock.notifyAll();
+        }
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                writer.join();
+                break;
+            } catch (InterruptedException ex) {
+                // The pending numbers are already in the log, so the writer has to finish them
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        IOException error;
+        synchronized (lock) {
+            error = durable < assigned ? failure : null;
+        }
+        log.close();
+        if (error != null) {
+            throw error;
+        }
+    }
+}
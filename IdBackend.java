@@ -0,0 +1,27 @@
+
+
+/**
+ * An authoritative source of ID-numbers, such as a database sequence, that is
+ * too slow to ask for every single ID.
+ * <p>
+ * ID's are handed out from it in blocks, normally through a
+ * {@link PrefetchingIdGenerator} that fetches the next block in the
+ * background.
+ *
+ * @author Christian
+ */
+public interface IdBackend {
+
+    /**
+     * Reserves a contiguous block of ID-numbers. This may block while the
+     * backend is being contacted.
+     * <p>
+     * Every number from the returned value (inclusive) up to the returned
+     * value plus {@code count} (exclusive) must belong to the caller, and
+     * never be handed out again, not even after a restart.
+     *
+     * @param count How many ID-numbers to reserve
+     * @return The first ID-number in the reserved block
+     */
+    long reserve(int count);
+}
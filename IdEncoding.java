@@ -0,0 +1,352 @@
+
+import java.io.IOException;
+import java.util.Arrays;
+
+
+/**
+ * A collection of compact text encodings for {@code long} ID's, such as the
+ * ones created by {@link IdGenerator}, for use in URL's and cache keys.
+ * <p>
+ * Two encodings are available:
+ * <ul>
+ * <li>Base62 uses {@code 0-9}, {@code A-Z} and {@code a-z}, and needs at most
+ * {@value #MAX_BASE62_LENGTH} characters</li>
+ * <li>Crockford's Base32 uses {@code 0-9} and upper case letters except
+ * {@code I}, {@code L}, {@code O} and {@code U}, needs at most
+ * {@value #MAX_BASE32_LENGTH} characters, and is case-insensitive when
+ * decoding</li>
+ * </ul>
+ * In both encodings, ID's of the same length sort the same way as text as they
+ * do as numbers. ID's are treated as unsigned. The encoders write straight into
+ * the caller's {@code char[]}, {@link StringBuilder} or {@link Appendable}, and
+ * the decoders read straight from a {@link CharSequence}, so neither of them
+ * creates any objects.
+ *
+ * @author Christian
+ */
+public final class IdEncoding {
+
+    /**
+     * The most characters a Base62 encoded ID can need.
+     * <p>
+     * The current value is '{@value #MAX_BASE62_LENGTH}'
+     */
+    public static final int MAX_BASE62_LENGTH = 11;
+
+    /**
+     * The most characters a Base32 encoded ID can need.
+     * <p>
+     * The current value is '{@value #MAX_BASE32_LENGTH}'
+     */
+    public static final int MAX_BASE32_LENGTH = 13;
+
+    static final char[] BASE62_ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz".toCharArray();
+
+    static final char[] CROCKFORD_ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+    static final byte[] BASE62_VALUES = new byte[128];
+
+    static final byte[] CROCKFORD_VALUES = new byte[128];
+
+    private static final int BASE62 = 62;
+
+    /**
+     * The powers of 62 that fit in an unsigned {@code long}, used to find the
+     * length of an encoded ID and to encode it from the most significant
+     * digit.
+     */
+    private static final long[] BASE62_POWERS = new long[MAX_BASE62_LENGTH];
+
+    private static final long MAX_BASE62_PREFIX = Long.divideUnsigned(-1L, BASE62);
+
+    static {
+        Arrays.fill(BASE62_VALUES, (byte) -1);
+        for (int i = 0; i < BASE62_ALPHABET.length; i++) {
+            BASE62_VALUES[BASE62_ALPHABET[i]] = (byte) i;
+        }
+
+        Arrays.fill(CROCKFORD_VALUES, (byte) -1);
+        for (int i = 0; i < CROCKFORD_ALPHABET.length; i++) {
+            CROCKFORD_VALUES[CROCKFORD_ALPHABET[i]] = (byte) i;
+            CROCKFORD_VALUES[Character.toLowerCase(CROCKFORD_ALPHABET[i])] = (byte) i;
+        }
+        // Crockford's Base32 reads the commonly confused letters as the digits they resemble
+        CROCKFORD_VALUES['O'] = CROCKFORD_VALUES['o'] = 0;
+        CROCKFORD_VALUES['I'] = CROCKFORD_VALUES['i'] = 1;
+        CROCKFORD_VALUES['L'] = CROCKFORD_VALUES['l'] = 1;
+
+        BASE62_POWERS[0] = 1;
+        for (int i = 1; i < BASE62_POWERS.length; i++) {
+            BASE62_POWERS[i] = BASE62_POWERS[i - 1] * BASE62;
+        }
+    }
+
+
+    /**
+     * Encodes an ID as Base62.
+     *
+     * @param id The ID to encode
+     * @return The encoded ID
+     */
+    public static final String toBase62(long id) {
+        char[] text = new char[base62Length(id)];
+        encodeBase62(id, text, 0);
+        return new String(text);
+    }
+
+
+    /**
+     * Encodes an ID as Base62 into a {@code char}-array.
+     *
+     * @param id The ID to encode
+     * @param target The array to write to, with room for up to
+     * {@value #MAX_BASE62_LENGTH} characters
+     * @param offset The index of the first character
+     * @return The index right after the last written character
+     */
+    public static final int encodeBase62(long id, char[] target, int offset) {
+        int end = offset + base62Length(id);
+        int position = end;
+
+        long rest = id;
+        if (rest < 0) {
+            // Take off the lowest digit as unsigned, so the rest can use plain division
+            target[--position] = BASE62_ALPHABET[(int) Long.remainderUnsigned(rest, BASE62)];
+            rest = Long.divideUnsigned(rest, BASE62);
+        }
+        do {
+            target[--position] = BASE62_ALPHABET[(int) (rest % BASE62)];
+            rest /= BASE62;
+        } while (rest != 0);
+
+        return end;
+    }
+
+
+    /**
+     * Encodes an ID as Base62, and appends it to a {@link StringBuilder}.
+     *
+     * @param id The ID to encode
+     * @param target The builder to append to
+     */
+    public static final void encodeBase62(long id, StringBuilder target) {
+        int start = target.length();
+        int position = start + base62Length(id);
+        target.setLength(position);
+
+        long rest = id;
+        if (rest < 0) {
+            target.setCharAt(--position, BASE62_ALPHABET[(int) Long.remainderUnsigned(rest, BASE62)]);
+            rest = Long.divideUnsigned(rest, BASE62);
+        }
+        do {
+            target.setCharAt(--position, BASE62_ALPHABET[(int) (rest % BASE62)]);
+            rest /= BASE62;
+        } while (rest != 0);
+    }
+
+
+    /**
+     * Encodes an ID as Base62, and appends it to an {@link Appendable}, one
+     * character at a time from the most significant digit.
+     *
+     * @param id The ID to encode
+     * @param target The destination to append to
+     * @throws IOException If the destination fails to append
+     */
+    public static final void encodeBase62(long id, Appendable target) throws IOException {
+        if (target instanceof StringBuilder) {
+            encodeBase62(id, (StringBuilder) target);
+            return;
+        }
+
+        long rest = id;
+        for (int i = base62Length(id) - 1; i > 0; i--) {
+            long digit = Long.divideUnsigned(rest, BASE62_POWERS[i]);
+            target.append(BASE62_ALPHABET[(int) digit]);
+            rest -= digit * BASE62_POWERS[i];
+        }
+        target.append(BASE62_ALPHABET[(int) rest]);
+    }
+
+
+    /**
+     * Returns how many characters an ID needs when encoded as Base62.
+     *
+     * @param id The ID to measure
+     * @return The length of the encoded ID
+     */
+    public static final int base62Length(long id) {
+        int length = 1;
+        while (length < MAX_BASE62_LENGTH && Long.compareUnsigned(id, BASE62_POWERS[length]) >= 0) {
+            length++;
+        }
+        return length;
+    }
+
+
+    /**
+     * Decodes a Base62 encoded ID.
+     *
+     * @param text The encoded ID
+     * @return The decoded ID
+     * @throws IllegalArgumentException If the text isn't a valid Base62 ID
+     */
+    public static final long decodeBase62(CharSequence text) {
+        return decodeBase62(text, 0, text.length());
+    }
+
+
+    /**
+     * Decodes a Base62 encoded ID from part of a {@link CharSequence}.
+     *
+     * @param text The text containing the encoded ID
+     * @param start The index of the first character of the ID
+     * @param end The index right after the last character of the ID
+     * @return The decoded ID
+     * @throws IllegalArgumentException If the text isn't a valid Base62 ID
+     */
+    public static final long decodeBase62(CharSequence text, int start, int end) {
+        if (start >= end) {
+            throw new IllegalArgumentException("Not a valid Base62 ID, it is empty");
+        }
+
+        long id = 0;
+        for (int i = start; i < end; i++) {
+            int digit = digitOf(text.charAt(i), BASE62_VALUES);
+            if (digit < 0 || Long.compareUnsigned(id, MAX_BASE62_PREFIX) > 0) {
+                throw invalid("Base62", text, start, end);
+            }
+            long shifted = id * BASE62;
+            id = shifted + digit;
+            if (Long.compareUnsigned(id, shifted) < 0) {
+                throw invalid("Base62", text, start, end);
+            }
+        }
+        return id;
+    }
+
+
+    /**
+     * Encodes an ID as Crockford's Base32.
+     *
+     * @param id The ID to encode
+     * @return The encoded ID
+     */
+    public static final String toBase32(long id) {
+        char[] text = new char[base32Length(id)];
+        encodeBase32(id, text, 0);
+        return new String(text);
+    }
+
+
+    /**
+     * Encodes an ID as Crockford's Base32 into a {@code char}-array.
+     *
+     * @param id The ID to encode
+     * @param target The array to write to, with room for up to
+     * {@value #MAX_BASE32_LENGTH} characters
+     * @param offset The index of the first character
+     * @return The index right after the last written character
+     */
+    public static final int encodeBase32(long id, char[] target, int offset) {
+        int length = base32Length(id);
+        for (int i = 0; i < length; i++) {
+            target[offset + i] = CROCKFORD_ALPHABET[(int) (id >>> ((length - 1 - i) * 5)) & 0x1F];
+        }
+        return offset + length;
+    }
+
+
+    /**
+     * Encodes an ID as Crockford's Base32, and appends it to an
+     * {@link Appendable}.
+     *
+     * @param id The ID to encode
+     * @param target The destination to append to
+     * @throws IOException If the destination fails to append
+     */
+    public static final void encodeBase32(long id, Appendable target) throws IOException {
+        for (int shift = (base32Length(id) - 1) * 5; shift >= 0; shift -= 5) {
+            target.append(CROCKFORD_ALPHABET[(int) (id >>> shift) & 0x1F]);
+        }
+    }
+
+
+    /**
+     * Encodes an ID as Crockford's Base32, and appends it to a
+     * {@link StringBuilder}.
+     *
+     * @param id The ID to encode
+     * @param target The builder to append to
+     */
+    public static final void encodeBase32(long id, StringBuilder target) {
+        for (int shift = (base32Length(id) - 1) * 5; shift >= 0; shift -= 5) {
+            target.append(CROCKFORD_ALPHABET[(int) (id >>> shift) & 0x1F]);
+        }
+    }
+
+
+    /**
+     * Returns how many characters an ID needs when encoded as Crockford's
+     * Base32.
+     *
+     * @param id The ID to measure
+     * @return The length of the encoded ID
+     */
+    public static final int base32Length(long id) {
+        return Math.max(1, (Long.SIZE - Long.numberOfLeadingZeros(id) + 4) / 5);
+    }
+
+
+    /**
+     * Decodes a Crockford's Base32 encoded ID. Lower case letters are
+     * accepted, and {@code I}, {@code L} and {@code O} are read as {@code 1},
+     * {@code 1} and {@code 0}.
+     *
+     * @param text The encoded ID
+     * @return The decoded ID
+     * @throws IllegalArgumentException If the text isn't a valid Base32 ID
+     */
+    public static final long decodeBase32(CharSequence text) {
+        return decodeBase32(text, 0, text.length());
+    }
+
+
+    /**
+     * Decodes a Crockford's Base32 encoded ID from part of a
+     * {@link CharSequence}.
+     *
+     * @param text The text containing the encoded ID
+     * @param start The index of the first character of the ID
+     * @param end The index right after the last character of the ID
+     * @return The decoded ID
+     * @throws IllegalArgumentException If the text isn't a valid Base32 ID
+     * @see #decodeBase32(CharSequence)
+     */
+    public static final long decodeBase32(CharSequence text, int start, int end) {
+        if (start >= end) {
+            throw new IllegalArgumentException("Not a valid Base32 ID, it is empty");
+        }
+
+        long id = 0;
+        for (int i = start; i < end; i++) {
+            int digit = digitOf(text.charAt(i), CROCKFORD_VALUES);
+            if (digit < 0 || (id >>> 59) != 0) {
+                throw invalid("Base32", text, start, end);
+            }
+            id = (id << 5) | digit;
+        }
+        return id;
+    }
+
+
+    private static int digitOf(char c, byte[] values) {
+        return c < values.length ? values[c] : -1;
+    }
+
+
+    private static IllegalArgumentException invalid(String encoding, CharSequence text, int start, int end) {
+        return new IllegalArgumentException("Not a valid " + encoding + " ID: " + text.subSequence(start, end));
+    }
+}
@@ -1,23 +1,139 @@
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
 
 /**
  * A utility class that generates unique, incremented ID's. This should ideally
  * be handled by a database, or be stored to be persistent.
+ * <p>
+ * The counter is lock-free and safe to use from any number of threads. Prefer
+ * {@link #nextId()} on hot paths, as it returns a primitive {@code long} and
+ * does not allocate.
  *
  * @author Christian
  */
 public class IdGenerator {
 
-    private static Long id = 0L;
+    private static final AtomicLong COUNTER = new AtomicLong();
+
+    private static final ConcurrentMap<String, IdSequence> SEQUENCES = new ConcurrentHashMap<>();
+
+
+    /**
+     * Return the next ID-number as a primitive, and increase the counter by
+     * one so we have a new number for the next iteration.
+     * <p>
+     * The increment is a single atomic fetch-and-add, so concurrent callers
+     * never receive the same number and never have to wait for a lock.
+     *
+     * @return The generated, unique ID
+     */
+    public static final long nextId() {
+        return COUNTER.getAndIncrement();
+    }
+
+
+    /**
+     * Reserves a contiguous block of ID-numbers in a single atomic step.
+     * <p>
+     * Every number from the returned value (inclusive) up to the returned
+     * value plus {@code count} (exclusive) belongs to the caller, and will
+     * never be handed out by {@link #nextId()} or another reservation.
+     *
+     * @param count How many ID-numbers to reserve
+     * @return The first ID-number in the reserved block
+     * @see #generateIds(long[], int, int)
+     * @see BlockIdGenerator
+     */
+    public static final long reserve(long count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Can't reserve a negative amount of ID's: " + count);
+        }
+        return COUNTER.getAndAdd(count);
+    }
+
+
+    /**
+     * Fills an array with newly generated ID-numbers.
+     *
+     * @param target The array to fill
+     * @see #generateIds(long[], int, int)
+     */
+    public static final void generateIds(long[] target) {
+        generateIds(target, 0, target.length);
+    }
+
+
+    /**
+     * Fills part of an array with newly generated ID-numbers.
+     * <p>
+     * The whole batch is reserved with a single atomic step, no matter how
+     * many ID's are requested, and the numbers are consecutive.
+     *
+     * @param target The array to fill
+     * @param offset The index of the first element to fill
+     * @param length How many elements to fill
+     */
+    public static final void generateIds(long[] target, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > target.length - length) {
+            throw new ArrayIndexOutOfBoundsException("Invalid range " + offset + " to " + (offset + length) + " for an array of length " + target.length);
+        }
+
+        long first = reserve(length);
+        for (int i = 0; i < length; i++) {
+            target[offset + i] = first + i;
+        }
+    }
+
+
+    /**
+     * Reserves a batch of newly generated ID-numbers in a single atomic step,
+     * and returns them as a stream.
+     *
+     * @param count How many ID's to generate
+     * @return A stream of the generated, consecutive ID's
+     */
+    public static final LongStream generateIdRange(long count) {
+        long first = reserve(count);
+        return LongStream.range(first, first + count);
+    }
+
+
+    /**
+     * Returns the named sequence, creating it the first time it is requested.
+     * <p>
+     * Each sequence has its own ID space, independent of {@link #nextId()}
+     * and of every other sequence. Looking up a sequence that already exists
+     * never takes a lock, but callers on hot paths should still keep the
+     * returned sequence rather than looking it up for every ID.
+     *
+     * @param name The name of the sequence, such as {@code "orders"}
+     * @return The sequence with the given name
+     */
+    public static final IdSequence sequence(String name) {
+        IdSequence sequence = SEQUENCES.get(name);
+        if (sequence == null) {
+            // computeIfAbsent locks the bin even when the key exists, so it is only used on a miss
+            sequence = SEQUENCES.computeIfAbsent(name, IdSequence::new);
+        }
+        return sequence;
+    }
 
 
     /**
      * Return the ID-number, and increase it by one so we have a new number for
      * the next iteration.
+     * <p>
+     * This boxes the result. Use {@link #nextId()} where the ID is only needed
+     * as a number.
      *
      * @return The generated, unique ID
+     * @see #nextId()
      */
     public static Long generateId() {
-        return id++;
+        return nextId();
     }
 }
@@ -0,0 +1,214 @@
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * A bounded pool of small, dense ID-numbers that can be released and reused,
+ * such as connection slots or indexes into flat arrays.
+ * <p>
+ * Unlike {@link IdGenerator}, which only counts upwards, the pool hands out
+ * numbers from {@code 0} up to its capacity, and a released number can be
+ * acquired again. Which numbers are in use is tracked in an atomic bitset,
+ * with a second, smaller bitset marking the words that are full, so that
+ * full regions are skipped 64 words at a time. Each thread remembers where it
+ * last found a free number and starts searching from there, which keeps
+ * threads apart and keeps the search short even when most numbers are in use.
+ * <p>
+ * The pool is lock-free and safe to use from any number of threads.
+ *
+ * @author Christian
+ */
+public final class IdPool {
+
+    private static final int WORD_BITS = Long.SIZE;
+
+    private static final int WORD_SHIFT = 6;
+
+    private final int capacity;
+
+    /**
+     * One bit per ID-number, set while the number is in use.
+     */
+    private final AtomicLongArray used;
+
+    /**
+     * One bit per word in {@link #used}, set while that word is believed to
+     * be full. It is only a hint: a set bit may lag behind a release by a
+     * moment, but the word is re-checked after being marked as full, so a
+     * free number is never hidden for good.
+     */
+    private final AtomicLongArray full;
+
+    /**
+     * The word each thread last found a free number in. Threads start out at
+     * random words, to spread them over the pool.
+     */
+    private final ThreadLocal<int[]> hints;
+
+
+    /**
+     * Creates a pool handing out the numbers from {@code 0} up to
+     * {@code capacity} (exclusive).
+     *
+     * @param capacity How many numbers the pool holds
+     */
+    public IdPool(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be at least 1: " + capacity);
+        }
+        this.capacity = capacity;
+
+        int words = (int) ((capacity + WORD_BITS - 1L) >>> WORD_SHIFT);
+        this.used = new AtomicLongArray(words);
+        this.full = new AtomicLongArray((words + WORD_BITS - 1) >>> WORD_SHIFT);
+        this.hints = ThreadLocal.withInitial(() -> new int[] {ThreadLocalRandom.current().nextInt(words)});
+
+        // The bits past the capacity in the last word are permanently in use
+        int spare = words * WORD_BITS - capacity;
+        if (spare > 0) {
+            used.set(words - 1, -1L << (WORD_BITS - spare));
+        }
+        // The summary bits past the last word are permanently full
+        int spareWords = full.length() * WORD_BITS - words;
+        if (spareWords > 0) {
+            full.set(full.length() - 1, -1L << (WORD_BITS - spareWords));
+        }
+    }
+
+
+    /**
+     * Acquires a free number from the pool.
+     *
+     * @return The acquired number, or {@code -1} if every number is in use
+     */
+    public int acquire() {
+        int[] hint = hints.get();
+        int start = hint[0];
+
+        // Try the word this thread last found a free number in, before looking elsewhere
+        int id = acquireIn(start);
+        if (id >= 0) {
+            return id;
+        }
+
+        int groups = full.length();
+        int startGroup = start >>> WORD_SHIFT;
+        for (int i = 0; i < groups; i++) {
+            int group = startGroup + i < groups ? startGroup + i : startGroup + i - groups;
+            long notFull = ~full.get(group);
+            while (notFull != 0) {
+                int word = (group << WORD_SHIFT) + Long.numberOfTrailingZeros(notFull);
+                id = acquireIn(word);
+                if (id >= 0) {
+                    hint[0] = word;
+                    return id;
+                }
+                notFull &= notFull - 1;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Tries to acquire a free number within a single word of the bitset.
+     *
+     * @param word The index of the word
+     * @return The acquired number, or {@code -1} if the word is full
+     */
+    private int acquireIn(int word) {
+        while (true) {
+            long bits = used.get(word);
+            if (bits == -1L) {
+                return -1;
+            }
+
+            long bit = Long.lowestOneBit(~bits);
+            long updated = bits | bit;
+            if (used.compareAndSet(word, bits, updated)) {
+                if (updated == -1L) {
+                    markFull(word);
+                }
+                return (word << WORD_SHIFT) + Long.numberOfTrailingZeros(bit);
+            }
+        }
+    }
+
+
+    private void markFull(int word) {
+        int group = word >>> WORD_SHIFT;
+        long bit = 1L << word;
+        setBit(full, group, bit);
+
+        // A number may have been released before the mark was set, so don't hide it
+        if (used.get(word) != -1L) {
+            clearBit(full, group, bit);
+        }
+    }
+
+
+    /**
+     * Releases a number, so that it can be acquired again.
+     *
+     * @param id The number to release
+     * @throws IllegalArgumentException If the number is outside the pool
+     * @throws IllegalStateException If the number isn't in use
+     */
+    public void release(int id) {
+        if (id < 0 || id >= capacity) {
+            throw new IllegalArgumentException("The ID " + id + " is outside the pool of " + capacity);
+        }
+
+        int word = id >>> WORD_SHIFT;
+        long bit = 1L << id;
+        while (true) {
+            long bits = used.get(word);
+            if ((bits & bit) == 0) {
+                throw new IllegalStateException("The ID " + id + " has already been released");
+            }
+            if (used.compareAndSet(word, bits, bits & ~bit)) {
+                break;
+            }
+        }
+        clearBit(full, word >>> WORD_SHIFT, 1L << word);
+    }
+
+
+    /**
+     * Checks if a number is currently in use.
+     *
+     * @param id The number to check
+     * @return true if the number is acquired, false if it is free
+     */
+    public boolean isAcquired(int id) {
+        if (id < 0 || id >= capacity) {
+            throw new IllegalArgumentException("The ID " + id + " is outside the pool of " + capacity);
+        }
+        return (used.get(id >>> WORD_SHIFT) & (1L << id)) != 0;
+    }
+
+
+    /**
+     * @return How many numbers the pool holds
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+
+    private static void setBit(AtomicLongArray bits, int index, long bit) {
+        long current;
+        do {
+            current = bits.get(index);
+        } while ((current & bit) == 0 && !bits.compareAndSet(index, current, current | bit));
+    }
+
+
+    private static void clearBit(AtomicLongArray bits, int index, long bit) {
+        long current;
+        do {
+            current = bits.get(index);
+        } while ((current & bit) != 0 && !bits.compareAndSet(index, current, current & ~bit));
+    }
+}
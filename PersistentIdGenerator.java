@@ -0,0 +1,171 @@
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Generates unique, incremented ID's that survive a restart, by keeping a
+ * high-water mark in a small memory-mapped checkpoint file.
+ * <p>
+ * Instead of writing every ID to disk, the generator reserves a range of
+ * numbers ahead of time. It writes the end of that range to the file, and
+ * only flushes it again once the range is used up. The hot path is a single
+ * atomic increment and never does any I/O.
+ * <p>
+ * When the generator is opened again, after a normal shutdown or a crash, it
+ * continues from the last reservation that reached the disk. Numbers that were
+ * reserved but not handed out before the restart are skipped, so the ID's stay
+ * unique but may contain gaps.
+ *
+ * @author Christian
+ */
+public final class PersistentIdGenerator implements Closeable {
+
+    /**
+     * How many ID's are reserved each time the checkpoint file is flushed,
+     * unless another value is given.
+     * <p>
+     * The current value is '{@value #DEFAULT_RESERVE_AHEAD}'
+     */
+    public static final int DEFAULT_RESERVE_AHEAD = 10_000;
+
+    private static final int CHECKPOINT_SIZE = Long.BYTES;
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer checkpoint;
+
+    private final int reserveAhead;
+
+    private final AtomicLong counter;
+
+    /**
+     * Every number below this has been persisted to the checkpoint file, and
+     * can be handed out without any I/O.
+     */
+    private volatile long reservedLimit;
+
+
+    /**
+     * Opens a generator backed by the given file, using the
+     * {@link #DEFAULT_RESERVE_AHEAD default reservation size}. The file is
+     * created if it doesn't exist.
+     *
+     * @param file The checkpoint file
+     * @throws IOException If the file can't be opened or mapped
+     */
+    public PersistentIdGenerator(Path file) throws IOException {
+        this(file, DEFAULT_RESERVE_AHEAD);
+    }
+
+
+    /**
+     * Opens a generator backed by the given file. The file is created if it
+     * doesn't exist.
+     * <p>
+     * Only one generator, in one process, may use the same file at a time.
+     * The file is locked until the generator is closed, so a second one fails
+     * instead of handing out the same ID's again.
+     *
+     * @param file The checkpoint file
+     * @param reserveAhead How many ID's to reserve each time the file is
+     * flushed
+     * @throws IOException If the file can't be opened or mapped, or is
+     * already in use by another generator
+     */
+    public PersistentIdGenerator(Path file, int reserveAhead) throws IOException {
+        if (reserveAhead < 1) {
+            throw new IllegalArgumentException("The reservation must be at least 1: " + reserveAhead);
+        }
+        this.reserveAhead = reserveAhead;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            lock(channel, file);
+            // Mapping beyond the end of a new file grows it, and the new bytes are zero
+            this.checkpoint = channel.map(FileChannel.MapMode.READ_WRITE, 0, CHECKPOINT_SIZE);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+
+        long persisted = checkpoint.getLong(0);
+        if (persisted < 0) {
+            channel.close();
+            throw new IOException("The checkpoint file " + file + " is corrupt, it contains " + persisted);
+        }
+        this.counter = new AtomicLong(persisted);
+        this.reservedLimit = persisted;
+    }
+
+
+    /**
+     * Locks the whole file for this process, which is released again when the
+     * channel is closed.
+     *
+     * @param channel The opened file
+     * @param file The path of the file, for the error message
+     * @throws IOException If the file is already locked, by this or another
+     * process
+     */
+    static void lock(FileChannel channel, Path file) throws IOException {
+        boolean locked;
+        try {
+            locked = channel.tryLock() != null;
+        } catch (OverlappingFileLockException ex) {
+            locked = false;
+        }
+        if (!locked) {
+            throw new IOException("The file " + file + " is already in use");
+        }
+    }
+
+
+    /**
+     * Return the next ID-number, reserving and flushing a new range first if
+     * the current one is used up.
+     *
+     * @return The generated, unique ID
+     */
+    public long nextId() {
+        long id = counter.getAndIncrement();
+        if (id < reservedLimit) {
+            return id;
+        }
+        return reserveUpTo(id);
+    }
+
+
+    /**
+     * Persists a new reservation that includes the given ID, unless another
+     * thread already did it.
+     *
+     * @param id The ID that fell outside the current reservation
+     * @return The ID, now safe to hand out
+     */
+    private synchronized long reserveUpTo(long id) {
+        if (id >= reservedLimit) {
+            long limit = id + reserveAhead;
+            checkpoint.putLong(0, limit);
+            checkpoint.force();
+            reservedLimit = limit;
+        }
+        return id;
+    }
+
+
+    /**
+     * Closes the checkpoint file. ID's must not be generated after this.
+     *
+     * @throws IOException If the file can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
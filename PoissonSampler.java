@@ -0,0 +1,194 @@
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+
+/**
+ * Picks random counts from a Poisson distribution, such as the number of
+ * requests arriving in a time slot at a given average rate.
+ * <p>
+ * For means below 10, the count is found by inversion: a single random number
+ * is compared with a table of cumulative probabilities, which takes about as
+ * many steps as the mean. For larger means, the sampler uses Hormann's
+ * transformed rejection with squeeze (PTRS), which takes about one and a half
+ * pairs of random numbers for any mean, and only needs logarithms for the
+ * few that fall outside the squeeze. The constants for the mean are computed
+ * once, nothing is allocated per pick, and the sampler is safe to use from any
+ * number of threads.
+ *
+ * @author Christian
+ */
+public final class PoissonSampler {
+
+    /**
+     * The smallest mean for which rejection is faster than inversion.
+     */
+    private static final double PTRS_MIN_MEAN = 10;
+
+    private static final double MAX_MEAN = Integer.MAX_VALUE / 2.0;
+
+    /**
+     * Enough cumulative probabilities for any mean below
+     * {@link #PTRS_MIN_MEAN}, before the next ones no longer change the sum.
+     */
+    private static final int MAX_CUMULATIVE_SIZE = 64;
+
+    private static final int LOG_FACTORIAL_TABLE_SIZE = 256;
+
+    private static final double HALF_LOG_TWO_PI = 0.5 * Math.log(2 * Math.PI);
+
+    private static final double[] LOG_FACTORIALS = new double[LOG_FACTORIAL_TABLE_SIZE];
+
+    static {
+        for (int i = 1; i < LOG_FACTORIAL_TABLE_SIZE; i++) {
+            LOG_FACTORIALS[i] = LOG_FACTORIALS[i - 1] + Math.log(i);
+        }
+    }
+
+    private final double mean;
+
+    /**
+     * The probability of each count or less, for inversion, or {@code null}
+     * when using rejection.
+     */
+    private final double[] cumulative;
+
+    private final double logMean;
+
+    private final double a;
+
+    private final double b;
+
+    private final double logInverseAlpha;
+
+    private final double squeezeLimit;
+
+
+    /**
+     * Creates a sampler for the given mean.
+     *
+     * @param mean The mean of the distribution, which must be positive, and at
+     * most half of {@link Integer#MAX_VALUE}
+     */
+    public PoissonSampler(double mean) {
+        if (!(mean > 0 && mean <= MAX_MEAN)) {
+            throw new IllegalArgumentException("Invalid mean: " + mean);
+        }
+
+        this.mean = mean;
+        this.cumulative = mean < PTRS_MIN_MEAN ? cumulativeProbabilities(mean) : null;
+        this.logMean = Math.log(mean);
+
+        this.b = 0.931 + 2.53 * Math.sqrt(mean);
+        this.a = -0.059 + 0.02483 * b;
+        this.logInverseAlpha = Math.log(1.1239 + 1.1328 / (b - 3.4));
+        this.squeezeLimit = 0.9277 - 3.6224 / (b - 2);
+    }
+
+
+    private static double[] cumulativeProbabilities(double mean) {
+        double[] table = new double[MAX_CUMULATIVE_SIZE];
+        double probability = Math.exp(-mean);
+        double sum = 0;
+        int size = 0;
+        while (size < MAX_CUMULATIVE_SIZE && sum + probability != sum) {
+            sum += probability;
+            table[size++] = sum;
+            probability *= mean / size;
+        }
+        return Arrays.copyOf(table, size);
+    }
+
+
+    /**
+     * Picks a random count, using the random generator of the current
+     * thread.
+     *
+     * @return The count, never negative
+     */
+    public int sample() {
+        return sample(ThreadLocalRandom.current());
+    }
+
+
+    /**
+     * Picks a random count, using the given random generator.
+     *
+     * @param random The generator to draw from
+     * @return The count, never negative
+     */
+    public int sample(Random random) {
+        return cumulative != null ? sampleByInversion(random) : sampleByRejection(random);
+    }
+
+
+    private int sampleByInversion(Random random) {
+        double u = random.nextDouble();
+        int k = 0;
+        // The sum can round to slightly below 1, which leaves a vanishing chance of the count past the table
+        while (k < cumulative.length && u >= cumulative[k]) {
+            k++;
+        }
+        return k;
+    }
+
+
+    private int sampleByRejection(Random random) {
+        while (true) {
+            double u = random.nextDouble() - 0.5;
+            double v = random.nextDouble();
+            double us = 0.5 - Math.abs(u);
+            double k = Math.floor((2 * a / us + b) * u + mean + 0.43);
+
+            // The squeeze accepts most points without any logarithm
+            if (us >= 0.07 && v <= squeezeLimit) {
+                return (int) k;
+            }
+            if (k < 0 || (us < 0.013 && v > us)) {
+                continue;
+            }
+            if (Math.log(v) + logInverseAlpha - Math.log(a / (us * us) + b) <= -mean + k * logMean - logFactorial(k)) {
+                return (int) k;
+            }
+        }
+    }
+
+
+    /**
+     * Fills an array with random counts.
+     *
+     * @param target The array to fill
+     * @see #sample()
+     */
+    public void fill(int[] target) {
+        Random random = ThreadLocalRandom.current();
+        for (int i = 0; i < target.length; i++) {
+            target[i] = sample(random);
+        }
+    }
+
+
+    /**
+     * @return The mean of the distribution
+     */
+    public double getMean() {
+        return mean;
+    }
+
+
+    /**
+     * Returns {@code log(k!)}, from a table for small values, and from
+     * Stirling's series, which is accurate to double precision there, for
+     * larger ones.
+     */
+    private static double logFactorial(double k) {
+        if (k < LOG_FACTORIAL_TABLE_SIZE) {
+            return LOG_FACTORIALS[(int) k];
+        }
+        double inverse = 1.0 / k;
+        double inverseSquared = inverse * inverse;
+        return (k + 0.5) * Math.log(k) - k + HALF_LOG_TWO_PI
+                + inverse * (1.0 / 12 - inverseSquared * (1.0 / 360 - inverseSquared / 1260));
+    }
+}
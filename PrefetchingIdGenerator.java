@@ -0,0 +1,211 @@
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Hands out ID-numbers in blocks from a slow {@link IdBackend}, fetching the
+ * next block in the background before the current one runs out.
+ * <p>
+ * When the current block reaches its low-water mark, the next block is
+ * requested from the backend asynchronously. If the backend answers before the
+ * current block is used up, which is the normal case, no caller ever waits for
+ * the backend. How often that succeeds is reported by
+ * {@link #getPrefetchHits()} and {@link #getPrefetchMisses()}.
+ * <p>
+ * Handing out an ID from the current block is a single atomic increment. The
+ * ID's are unique as long as the backend never hands out the same block twice,
+ * and are only in order within each block.
+ *
+ * @author Christian
+ */
+public final class PrefetchingIdGenerator {
+
+    /**
+     * How many ID's are fetched from the backend at a time, unless another
+     * value is given.
+     * <p>
+     * The current value is '{@value #DEFAULT_BLOCK_SIZE}'
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1000;
+
+    /**
+     * The background fetches are blocking calls, so they get threads of their
+     * own rather than occupying the common fork-join pool.
+     */
+    private static final Executor DEFAULT_EXECUTOR = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "id-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final IdBackend backend;
+
+    private final int blockSize;
+
+    private final int lowWaterMark;
+
+    private final Executor executor;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private volatile Block current = new Block(0, 0, 0);
+
+    /**
+     * The block being fetched in the background, or {@code null} if no fetch
+     * has been started for the current block yet. Guarded by {@code this}.
+     */
+    private CompletableFuture<Long> prefetch;
+
+
+    /**
+     * Creates a generator using the {@link #DEFAULT_BLOCK_SIZE default block
+     * size}, which starts prefetching when a quarter of the block is left.
+     *
+     * @param backend The backend to fetch blocks from
+     */
+    public PrefetchingIdGenerator(IdBackend backend) {
+        this(backend, DEFAULT_BLOCK_SIZE, DEFAULT_BLOCK_SIZE / 4, DEFAULT_EXECUTOR);
+    }
+
+
+    /**
+     * Creates a generator with a custom block size and low-water mark.
+     * <p>
+     * The executor runs the background fetches. On Java 21 and later,
+     * {@code Executors.newVirtualThreadPerTaskExecutor()} is a good fit, since
+     * the fetches spend most of their time waiting for the backend.
+     *
+     * @param backend The backend to fetch blocks from
+     * @param blockSize How many ID's to fetch at a time
+     * @param lowWaterMark How many ID's may be left in the current block when
+     * the next one is requested, at least 1 and at most the block size
+     * @param executor The executor running the background fetches
+     */
+    public PrefetchingIdGenerator(IdBackend backend, int blockSize, int lowWaterMark, Executor executor) {
+        if (blockSize < 1 || lowWaterMark < 1 || lowWaterMark > blockSize) {
+            throw new IllegalArgumentException("Invalid block size " + blockSize + " or low-water mark " + lowWaterMark);
+        }
+        this.backend = backend;
+        this.blockSize = blockSize;
+        this.lowWaterMark = lowWaterMark;
+        this.executor = executor;
+
+        // Start fetching the first block right away, so it is likely ready when the first ID is needed
+        startPrefetch();
+    }
+
+
+    /**
+     * Return the next ID-number from the current block, switching to the next
+     * block if it has run out.
+     *
+     * @return The generated, unique ID
+     */
+    public long nextId() {
+        while (true) {
+            Block block = current;
+            long id = block.next.getAndIncrement();
+            if (id < block.end) {
+                // Exactly one caller gets the ID at the low-water mark, so only one prefetch is started
+                if (id == block.prefetchAt) {
+                    startPrefetch();
+                }
+                return id;
+            }
+            advance(block);
+        }
+    }
+
+
+    private synchronized void startPrefetch() {
+        if (prefetch == null) {
+            prefetch = CompletableFuture.supplyAsync(() -> backend.reserve(blockSize), executor);
+        }
+    }
+
+
+    /**
+     * Replaces the exhausted block with the prefetched one, waiting for it if
+     * it isn't ready yet, unless another thread already did it.
+     *
+     * @param exhausted The block that has run out
+     */
+    private synchronized void advance(Block exhausted) {
+        if (current != exhausted) {
+            return;
+        }
+
+        long first;
+        if (prefetch != null && prefetch.isDone() && !prefetch.isCompletedExceptionally()) {
+            hits.increment();
+            first = prefetch.join();
+        } else {
+            misses.increment();
+            first = awaitPrefetch();
+        }
+
+        prefetch = null;
+        current = new Block(first, blockSize, lowWaterMark);
+    }
+
+
+    /**
+     * Waits for the running prefetch, or fetches the block directly if there
+     * is none or it failed.
+     */
+    private long awaitPrefetch() {
+        if (prefetch != null) {
+            try {
+                return prefetch.join();
+            } catch (CompletionException ex) {
+                Logger.getLogger(PrefetchingIdGenerator.class.getName()).log(Level.WARNING, "Prefetching a block of ID's failed, retrying directly", ex.getCause());
+            }
+        }
+        return backend.reserve(blockSize);
+    }
+
+
+    /**
+     * @return How many times the next block was ready when it was needed
+     */
+    public long getPrefetchHits() {
+        return hits.sum();
+    }
+
+
+    /**
+     * @return How many times a caller had to wait for the backend
+     */
+    public long getPrefetchMisses() {
+        return misses.sum();
+    }
+
+
+    /**
+     * A block of ID's fetched from the backend.
+     */
+    private static final class Block {
+
+        private final AtomicLong next;
+
+        private final long end;
+
+        private final long prefetchAt;
+
+
+        private Block(long first, int size, int lowWaterMark) {
+            this.next = new AtomicLong(first);
+            this.end = first + size;
+            this.prefetchAt = Math.max(first, end - lowWaterMark);
+        }
+    }
+}
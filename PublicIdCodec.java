@@ -0,0 +1,94 @@
+
+
+/**
+ * Turns internal, sequential ID's into public ID's that can't be guessed from
+ * each other, and back again, without storing anything.
+ * <p>
+ * The public ID is the internal ID run through a keyed, reversible
+ * permutation of all 64-bit values (a small {@link FeistelNetwork}), encoded as
+ * Base62 with {@link IdEncoding}. Decoding reverses both steps in a few
+ * nanoseconds, so there is no need for a second, random token column with its
+ * own index.
+ * <p>
+ * This hides how many records exist and in which order they were created, but
+ * it is not encryption: anyone who learns enough pairs of internal and public
+ * ID's may be able to recover the key. Don't use it where the ID itself must
+ * stay secret.
+ *
+ * @author Christian
+ */
+public final class PublicIdCodec {
+
+    private final FeistelNetwork network;
+
+
+    /**
+     * Creates a codec for the given key. The same key must be used to decode
+     * the ID's it encoded, and changing it changes every public ID.
+     *
+     * @param key The secret key
+     */
+    public PublicIdCodec(long key) {
+        this.network = new FeistelNetwork(key, Integer.SIZE);
+    }
+
+
+    /**
+     * Permutes an internal ID into its public number.
+     *
+     * @param id The internal ID
+     * @return The public number, unique for every internal ID
+     */
+    public long scramble(long id) {
+        return network.encrypt(id);
+    }
+
+
+    /**
+     * Reverses {@link #scramble(long)}.
+     *
+     * @param publicNumber The public number
+     * @return The internal ID
+     */
+    public long unscramble(long publicNumber) {
+        return network.decrypt(publicNumber);
+    }
+
+
+    /**
+     * Encodes an internal ID as a public ID.
+     *
+     * @param id The internal ID
+     * @return The public ID, at most {@value IdEncoding#MAX_BASE62_LENGTH}
+     * characters long
+     */
+    public String encode(long id) {
+        return IdEncoding.toBase62(scramble(id));
+    }
+
+
+    /**
+     * Encodes an internal ID as a public ID into a {@code char}-array.
+     *
+     * @param id The internal ID
+     * @param target The array to write to, with room for up to
+     * {@value IdEncoding#MAX_BASE62_LENGTH} characters
+     * @param offset The index of the first character
+     * @return The index right after the last written character
+     */
+    public int encode(long id, char[] target, int offset) {
+        return IdEncoding.encodeBase62(scramble(id), target, offset);
+    }
+
+
+    /**
+     * Decodes a public ID back into the internal ID.
+     *
+     * @param publicId The public ID
+     * @return The internal ID
+     * @throws IllegalArgumentException If the text isn't a valid public ID
+     */
+    public long decode(CharSequence publicId) {
+        return unscramble(IdEncoding.decodeBase62(publicId));
+    }
+}
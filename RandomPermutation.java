@@ -0,0 +1,185 @@
+
+import java.util.Spliterator;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+
+/**
+ * A random order of all numbers from {@code 0} up to a given size, computed
+ * one number at a time, without storing the order anywhere. This visits every
+ * key of a range far too large for an array exactly once, in random order,
+ * such as when a load test needs every key in [0, 10^10).
+ * <p>
+ * The order is a keyed {@link FeistelNetwork}, the same one
+ * {@link PublicIdCodec} uses for all 64 bits, over the smallest even number
+ * of bits that covers the size. Numbers that land outside the range are fed
+ * through the network again until they land inside it, which is called
+ * cycle-walking, and takes fewer than four rounds on average since the
+ * network covers less than four times the size. Both directions take constant
+ * time and memory, and the same key always gives the same order.
+ * <p>
+ * The order is not cryptographically strong. The permutation is immutable and
+ * safe to use from any number of threads, and its
+ * {@link #spliterator() spliterator} splits the range between fork-join
+ * workers.
+ *
+ * @author Christian
+ */
+public final class RandomPermutation {
+
+    private final long size;
+
+    private final FeistelNetwork network;
+
+
+    /**
+     * Creates a permutation of the given size with the given key.
+     *
+     * @param size How many numbers to permute, starting at 0
+     * @param key The key that decides the order
+     * @see Randomize#permutation(long)
+     */
+    public RandomPermutation(long size, long key) {
+        if (size < 0) {
+            throw new IllegalArgumentException("The size must not be negative: " + size);
+        }
+
+        this.size = size;
+        // The smallest even number of bits that holds every number below the size, at least 2
+        int bits = Math.max(2, Long.SIZE - Long.numberOfLeadingZeros(size - 1));
+        this.network = new FeistelNetwork(key, (bits + 1) / 2);
+    }
+
+
+    /**
+     * Returns the number at a given position of the random order.
+     *
+     * @param index The position, from 0 up to the size
+     * @return The number at that position, from 0 up to the size
+     */
+    public long permute(long index) {
+        checkRange(index);
+        long value = index;
+        do {
+            value = network.encrypt(value);
+        } while (Long.compareUnsigned(value, size) >= 0);
+        return value;
+    }
+
+
+    /**
+     * Returns the position of a number in the random order, which reverses
+     * {@link #permute(long)}.
+     *
+     * @param value The number, from 0 up to the size
+     * @return Its position, from 0 up to the size
+     */
+    public long inverse(long value) {
+        checkRange(value);
+        long index = value;
+        do {
+            index = network.decrypt(index);
+        } while (Long.compareUnsigned(index, size) >= 0);
+        return index;
+    }
+
+
+    /**
+     * @return How many numbers are permuted
+     */
+    public long size() {
+        return size;
+    }
+
+
+    /**
+     * Returns all numbers in the random order, as a stream that can be made
+     * parallel.
+     *
+     * @return The stream
+     */
+    public LongStream stream() {
+        return StreamSupport.longStream(spliterator(), false);
+    }
+
+
+    /**
+     * Returns a spliterator over all numbers in the random order. Splitting
+     * it splits the positions in halves, so each fork-join worker computes
+     * its own part of the order.
+     *
+     * @return The spliterator
+     */
+    public Spliterator.OfLong spliterator() {
+        return new Positions(0, size);
+    }
+
+
+    private void checkRange(long number) {
+        if (number < 0 || number >= size) {
+            throw new IndexOutOfBoundsException("Number " + number + " out of bounds for size " + size);
+        }
+    }
+
+
+    /**
+     * Walks a range of positions, and returns the permuted number of each.
+     */
+    private final class Positions implements Spliterator.OfLong {
+
+        private long from;
+
+        private final long to;
+
+
+        Positions(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            if (from >= to) {
+                return false;
+            }
+            action.accept(permute(from++));
+            return true;
+        }
+
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            long index = from;
+            from = to;
+            for (; index < to; index++) {
+                action.accept(permute(index));
+            }
+        }
+
+
+        @Override
+        public Spliterator.OfLong trySplit() {
+            long middle = from + ((to - from) >>> 1);
+            if (middle <= from) {
+                return null;
+            }
+            Positions prefix = new Positions(from, middle);
+            from = middle;
+            return prefix;
+        }
+
+
+        @Override
+        public long estimateSize() {
+            return to - from;
+        }
+
+
+        @Override
+        public int characteristics() {
+            return ORDERED | DISTINCT | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
+    }
+}
@@ -1,24 +1,1223 @@
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 
 /**
  * A collection of commonly used utilities that randomizes numbers, strings and
  * other values.
+ * <p>
+ * The values come from the {@link ThreadLocalRandom} of the calling thread,
+ * so no generator is created per call, and threads never contend on a shared
+ * seed. They are not cryptographically strong; use {@link Security} for
+ * salts and tokens. For reproducible results, pass a {@link SeededRandom} to
+ * the methods that accept a generator.
  *
  * @author Christian
  */
 public final class Randomize {
 
+    private static final long INT_MASK = 0xFFFFFFFFL;
+
+    private static final long INT_RANGE = 1L << Integer.SIZE;
+
+    /**
+     * The fractional part of the golden ratio, as a 64-bit number. It is the
+     * increment of the SplitMix64 generator used by the bulk methods, the same
+     * one {@link java.util.SplittableRandom} uses, and also the key increment
+     * of Philox-2x64. The other random classes share it from here.
+     */
+    static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Turns the upper 53 bits of a random {@code long} into a {@code double}
+     * from 0.0 (inclusive) up to 1.0 (exclusive).
+     */
+    static final double DOUBLE_UNIT = 0x1.0p-53;
+
+    /**
+     * The multiplier of the Philox-2x64 counter-based generator, as published
+     * with the Random123 library, whose key increment is
+     * {@link #GOLDEN_GAMMA}.
+     */
+    private static final long PHILOX_MULTIPLIER = 0xD2B74407B1CE6E93L;
+
+    private static final int PHILOX_ROUNDS = 10;
+
+    /**
+     * Up to this many indexes, {@link #sampleIndexes(Random, int, int[])}
+     * checks for duplicates in the target array instead of a scratch table.
+     */
+    private static final int LINEAR_SAMPLE_LIMIT = 64;
+
+    private static final long MAX_BIT_SET_SIZE = 1L << 36;
+
+    /**
+     * Up to this many sparse indexes, {@link #sampleIndexes(Random, long, long[])}
+     * checks for duplicates in a hash table of at most 32 MB. More are sorted
+     * in the target array instead, which needs no memory at all.
+     */
+    private static final int MAX_INDEX_TABLE_COUNT = 1 << 20;
+
+    /**
+     * Blocks up to this size are shuffled sequentially by
+     * {@link #parallelShuffle(int[])}, and small enough to stay in the cache.
+     */
+    private static final int PARALLEL_SHUFFLE_THRESHOLD = 1 << 18;
+
+
+    /**
+     * Creates a seeded generator, which gives the same values every time it
+     * is created with the same seed.
+     *
+     * @param seed The seed
+     * @return The generator
+     * @see SeededRandom#split()
+     * @see SeededRandom#substream(long, long)
+     */
+    public static final SeededRandom seeded(long seed) {
+        return new SeededRandom(seed);
+    }
+
+
+    /**
+     * Creates a random order of all numbers from {@code 0} up to a given
+     * size, without storing it, with a random key.
+     *
+     * @param size How many numbers to permute
+     * @return The permutation
+     * @see RandomPermutation#RandomPermutation(long, long)
+     */
+    public static final RandomPermutation permutation(long size) {
+        return new RandomPermutation(size, ThreadLocalRandom.current().nextLong());
+    }
+
+
     /**
      * Create a randomized number between two given values.
+     * <p>
+     * Any range is supported, up to and including
+     * {@code randomBetween(Integer.MIN_VALUE, Integer.MAX_VALUE)}.
      *
      * @param min The lowest number (inclusive)
      * @param max The highest number (inclusive)
      * @return The randomized number
+     * @see #randomBetween(Random, int, int)
      */
     public static final int randomBetween(int min, int max) {
-        return new Random().nextInt(max - min + 1) + min;
+        return randomBetween(ThreadLocalRandom.current(), min, max);
+    }
+
+
+    /**
+     * Create a randomized number between two given values, using the given
+     * generator.
+     * <p>
+     * The number is picked with Lemire's multiply-shift method: a random
+     * 32-bit value is multiplied by the size of the range, and the upper half
+     * of the product is the result. A division is only needed, and a new value
+     * only drawn, in the rare case where the lower half shows the result could
+     * be biased. Every number in the range is exactly equally likely.
+     *
+     * @param random The generator to draw from
+     * @param min The lowest number (inclusive)
+     * @param max The highest number (inclusive)
+     * @return The randomized number
+     */
+    public static final int randomBetween(Random random, int min, int max) {
+        if (min > max) {
+            throw new IllegalArgumentException("The minimum " + min + " is larger than the maximum " + max);
+        }
+
+        long range = (long) max - min + 1;
+        long bits = random.nextInt() & INT_MASK;
+        if (range == INT_RANGE) {
+            return (int) bits;
+        }
+
+        long product = bits * range;
+        if ((product & INT_MASK) < range) {
+            long threshold = INT_RANGE % range;
+            while ((product & INT_MASK) < threshold) {
+                product = (random.nextInt() & INT_MASK) * range;
+            }
+        }
+        return (int) (min + (product >>> Integer.SIZE));
+    }
+
+
+    /**
+     * Create a randomized number between two given values.
+     * <p>
+     * Any range is supported, up to and including
+     * {@code randomBetween(Long.MIN_VALUE, Long.MAX_VALUE)}.
+     *
+     * @param min The lowest number (inclusive)
+     * @param max The highest number (inclusive)
+     * @return The randomized number
+     * @see #randomBetween(Random, long, long)
+     */
+    public static final long randomBetween(long min, long max) {
+        return randomBetween(ThreadLocalRandom.current(), min, max);
+    }
+
+
+    /**
+     * Create a randomized number between two given values, using the given
+     * generator.
+     * <p>
+     * Uses the same multiply-shift method as
+     * {@link #randomBetween(Random, int, int)}, on the full 128-bit product of
+     * a random 64-bit value and the size of the range.
+     *
+     * @param random The generator to draw from
+     * @param min The lowest number (inclusive)
+     * @param max The highest number (inclusive)
+     * @return The randomized number
+     */
+    public static final long randomBetween(Random random, long min, long max) {
+        if (min > max) {
+            throw new IllegalArgumentException("The minimum " + min + " is larger than the maximum " + max);
+        }
+
+        // The size of the range as an unsigned number, where 0 means all 2^64 values
+        long range = max - min + 1;
+        long bits = random.nextLong();
+        if (range == 0) {
+            return bits;
+        }
+
+        long low = bits * range;
+        if (Long.compareUnsigned(low, range) < 0) {
+            long threshold = Long.remainderUnsigned(-range, range);
+            while (Long.compareUnsigned(low, threshold) < 0) {
+                bits = random.nextLong();
+                low = bits * range;
+            }
+        }
+        return min + unsignedMultiplyHigh(bits, range);
+    }
+
+
+    /**
+     * Returns the upper 64 bits of the unsigned 128-bit product of two
+     * values.
+     */
+    static long unsignedMultiplyHigh(long x, long y) {
+        return Math.multiplyHigh(x, y) + ((x >> 63) & y) + ((y >> 63) & x);
+    }
+
+
+    /**
+     * Fills an array with random numbers, covering every possible
+     * {@code int} value.
+     * <p>
+     * The bulk methods are meant for large amounts of data. They run a
+     * SplitMix64 generator, seeded from the {@link ThreadLocalRandom} of the
+     * calling thread, inside the loop itself, so each element costs a few
+     * arithmetic instructions and no method calls. Each step of the generator
+     * gives 64 random bits, which fill two {@code int}'s or eight
+     * {@code byte}'s at a time.
+     *
+     * @param target The array to fill
+     */
+    public static final void fill(int[] target) {
+        long state = ThreadLocalRandom.current().nextLong();
+        int i = 0;
+        for (; i + 1 < target.length; i += 2) {
+            long bits = mix64(state += GOLDEN_GAMMA);
+            target[i] = (int) bits;
+            target[i + 1] = (int) (bits >>> Integer.SIZE);
+        }
+        if (i < target.length) {
+            target[i] = (int) mix64(state + GOLDEN_GAMMA);
+        }
+    }
+
+
+    /**
+     * Fills an array with random numbers between two given values.
+     *
+     * @param target The array to fill
+     * @param min The lowest number (inclusive)
+     * @param max The highest number (inclusive)
+     * @see #fill(int[])
+     * @see #randomBetween(int, int)
+     */
+    public static final void fill(int[] target, int min, int max) {
+        if (min > max) {
+            throw new IllegalArgumentException("The minimum " + min + " is larger than the maximum " + max);
+        }
+
+        // Each step of the generator gives two 32-bit values for the same multiply-shift as randomBetween
+        long range = (long) max - min + 1;
+        long threshold = INT_RANGE % range;
+        long state = ThreadLocalRandom.current().nextLong();
+
+        int i = 0;
+        while (i < target.length) {
+            long bits = mix64(state += GOLDEN_GAMMA);
+
+            long product = (bits & INT_MASK) * range;
+            if ((product & INT_MASK) >= threshold) {
+                target[i++] = (int) (min + (product >>> Integer.SIZE));
+            }
+            product = (bits >>> Integer.SIZE) * range;
+            if ((product & INT_MASK) >= threshold && i < target.length) {
+                target[i++] = (int) (min + (product >>> Integer.SIZE));
+            }
+        }
+    }
+
+
+    /**
+     * Fills an array with random numbers, covering every possible
+     * {@code long} value.
+     *
+     * @param target The array to fill
+     * @see #fill(int[])
+     */
+    public static final void fill(long[] target) {
+        long state = ThreadLocalRandom.current().nextLong();
+        for (int i = 0; i < target.length; i++) {
+            target[i] = mix64(state += GOLDEN_GAMMA);
+        }
+    }
+
+
+    /**
+     * Fills an array with random numbers between two given values.
+     *
+     * @param target The array to fill
+     * @param min The lowest number (inclusive)
+     * @param max The highest number (inclusive)
+     * @see #fill(int[])
+     * @see #randomBetween(long, long)
+     */
+    public static final void fill(long[] target, long min, long max) {
+        if (min > max) {
+            throw new IllegalArgumentException("The minimum " + min + " is larger than the maximum " + max);
+        }
+
+        long range = max - min + 1;
+        if (range == 0) {
+            fill(target);
+            return;
+        }
+
+        long threshold = Long.remainderUnsigned(-range, range);
+        long state = ThreadLocalRandom.current().nextLong();
+
+        for (int i = 0; i < target.length; i++) {
+            long bits = mix64(state += GOLDEN_GAMMA);
+            while (Long.compareUnsigned(bits * range, threshold) < 0) {
+                bits = mix64(state += GOLDEN_GAMMA);
+            }
+            target[i] = min + unsignedMultiplyHigh(bits, range);
+        }
+    }
+
+
+    /**
+     * Fills an array with random numbers from {@code 0.0} (inclusive) up to
+     * {@code 1.0} (exclusive), using 53 random bits for each.
+     *
+     * @param target The array to fill
+     * @see #fill(int[])
+     */
+    public static final void fill(double[] target) {
+        long state = ThreadLocalRandom.current().nextLong();
+        for (int i = 0; i < target.length; i++) {
+            target[i] = (mix64(state += GOLDEN_GAMMA) >>> 11) * DOUBLE_UNIT;
+        }
+    }
+
+
+    /**
+     * Fills an array with random numbers from a given value (inclusive) up
+     * to another (exclusive).
+     *
+     * @param target The array to fill
+     * @param min The lowest number (inclusive)
+     * @param max The highest number (exclusive)
+     * @see #fill(int[])
+     */
+    public static final void fill(double[] target, double min, double max) {
+        if (!(min < max) || Double.isInfinite(max - min)) {
+            throw new IllegalArgumentException("Invalid range " + min + " to " + max);
+        }
+
+        double scale = max - min;
+        long state = ThreadLocalRandom.current().nextLong();
+        for (int i = 0; i < target.length; i++) {
+            double value = (mix64(state += GOLDEN_GAMMA) >>> 11) * DOUBLE_UNIT * scale + min;
+            // Rounding can land exactly on the maximum, which is excluded
+            target[i] = value < max ? value : Math.nextDown(max);
+        }
+    }
+
+
+    /**
+     * Fills an array with random bytes.
+     *
+     * @param target The array to fill
+     * @see #fill(int[])
+     */
+    public static final void fill(byte[] target) {
+        long state = ThreadLocalRandom.current().nextLong();
+        int i = 0;
+        for (; i + Long.BYTES <= target.length; i += Long.BYTES) {
+            long bits = mix64(state += GOLDEN_GAMMA);
+            for (int j = 0; j < Long.BYTES; j++) {
+                target[i + j] = (byte) (bits >>> (j * Byte.SIZE));
+            }
+        }
+        long bits = mix64(state + GOLDEN_GAMMA);
+        for (; i < target.length; i++, bits >>>= Byte.SIZE) {
+            target[i] = (byte) bits;
+        }
+    }
+
+
+    /**
+     * Fills the remaining bytes of a buffer with random bytes, from its
+     * position up to its limit, and moves the position to the limit.
+     * <p>
+     * The bytes are written eight at a time, which is especially efficient for
+     * direct, off-heap buffers.
+     *
+     * @param target The buffer to fill
+     * @see #fill(int[])
+     */
+    public static final void fill(ByteBuffer target) {
+        long state = ThreadLocalRandom.current().nextLong();
+        int position = target.position();
+        int limit = target.limit();
+
+        for (; position + Long.BYTES <= limit; position += Long.BYTES) {
+            target.putLong(position, mix64(state += GOLDEN_GAMMA));
+        }
+        long bits = mix64(state + GOLDEN_GAMMA);
+        for (; position < limit; position++, bits >>>= Byte.SIZE) {
+            target.put(position, (byte) bits);
+        }
+        target.position(limit);
+    }
+
+
+    /**
+     * Returns the random value at a given position of the stream for a seed,
+     * without generating the values before it.
+     * <p>
+     * This is a counter-based generator (Philox-2x64-10): each pair of values
+     * is computed directly from the seed and its position, by a few rounds of
+     * multiplication and mixing. A sharded job can give each shard its own
+     * range of positions, and a rerun of one shard produces exactly the same
+     * values as the original run.
+     *
+     * @param seed The seed of the stream
+     * @param index The position in the stream, counting from 0
+     * @return The random value at that position
+     * @see #fillAt(long, long, long[], int, int)
+     */
+    public static final long randomAt(long seed, long index) {
+        long counter = index >>> 1;
+        long key = seed;
+        long first = counter;
+        long second = 0;
+
+        for (int round = 0; round < PHILOX_ROUNDS; round++, key += GOLDEN_GAMMA) {
+            long high = unsignedMultiplyHigh(PHILOX_MULTIPLIER, first);
+            long low = PHILOX_MULTIPLIER * first;
+            first = high ^ key ^ second;
+            second = low;
+        }
+        return (index & 1) == 0 ? first : second;
+    }
+
+
+    /**
+     * Returns the random value at a given position of the stream for a seed,
+     * as a number from {@code 0.0} (inclusive) up to {@code 1.0} (exclusive).
+     *
+     * @param seed The seed of the stream
+     * @param index The position in the stream, counting from 0
+     * @return The random value at that position
+     * @see #randomAt(long, long)
+     */
+    public static final double randomDoubleAt(long seed, long index) {
+        return (randomAt(seed, index) >>> 11) * DOUBLE_UNIT;
+    }
+
+
+    /**
+     * Fills an array with consecutive values of the stream for a seed,
+     * starting at a given position. The result is the same as calling
+     * {@link #randomAt(long, long)} for each position, but each computation
+     * gives two values, and the iterations don't depend on each other, so the
+     * loop can run at full speed.
+     *
+     * @param seed The seed of the stream
+     * @param index The position in the stream of the first value
+     * @param target The array to fill
+     * @param offset The index of the first element to fill
+     * @param length How many elements to fill
+     */
+    public static final void fillAt(long seed, long index, long[] target, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > target.length - length) {
+            throw new ArrayIndexOutOfBoundsException("Invalid range " + offset + " to " + (offset + length) + " for an array of length " + target.length);
+        }
+        fillAt(seed, index, target, null, offset, length);
+    }
+
+
+    /**
+     * Fills an array with consecutive values of the stream for a seed,
+     * starting at a given position, as numbers from {@code 0.0} (inclusive)
+     * up to {@code 1.0} (exclusive).
+     *
+     * @param seed The seed of the stream
+     * @param index The position in the stream of the first value
+     * @param target The array to fill
+     * @param offset The index of the first element to fill
+     * @param length How many elements to fill
+     * @see #fillAt(long, long, long[], int, int)
+     * @see #randomDoubleAt(long, long)
+     */
+    public static final void fillAt(long seed, long index, double[] target, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > target.length - length) {
+            throw new ArrayIndexOutOfBoundsException("Invalid range " + offset + " to " + (offset + length) + " for an array of length " + target.length);
+        }
+        fillAt(seed, index, null, target, offset, length);
+    }
+
+
+    /**
+     * Fills either array with consecutive values of the stream for a seed.
+     * The other array is {@code null}, which decides whether the values are
+     * stored as they are, or as numbers from {@code 0.0} up to {@code 1.0};
+     * the choice never changes within the loop, so it costs next to nothing.
+     *
+     * @param seed The seed of the stream
+     * @param index The position in the stream of the first value
+     * @param longs The array to fill with the raw values, or {@code null}
+     * @param doubles The array to fill with the values as doubles, or
+     * {@code null}
+     * @param offset The index of the first element to fill
+     * @param length How many elements to fill
+     */
+    private static void fillAt(long seed, long index, long[] longs, double[] doubles, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        long position = index;
+
+        // An odd starting position only needs the second half of its pair
+        if ((position & 1) != 0 && i < end) {
+            store(longs, doubles, i++, randomAt(seed, position++));
+        }
+
+        // Two counters are computed side by side, so the CPU can overlap their multiplications
+        for (; i + 3 < end; i += 4, position += 4) {
+            long key = seed;
+            long first = position >>> 1;
+            long second = 0;
+            long third = first + 1;
+            long fourth = 0;
+            for (int round = 0; round < PHILOX_ROUNDS; round++, key += GOLDEN_GAMMA) {
+                long high = unsignedMultiplyHigh(PHILOX_MULTIPLIER, first);
+                long low = PHILOX_MULTIPLIER * first;
+                long otherHigh = unsignedMultiplyHigh(PHILOX_MULTIPLIER, third);
+                long otherLow = PHILOX_MULTIPLIER * third;
+                first = high ^ key ^ second;
+                second = low;
+                third = otherHigh ^ key ^ fourth;
+                fourth = otherLow;
+            }
+            if (doubles == null) {
+                longs[i] = first;
+                longs[i + 1] = second;
+                longs[i + 2] = third;
+                longs[i + 3] = fourth;
+            } else {
+                doubles[i] = (first >>> 11) * DOUBLE_UNIT;
+                doubles[i + 1] = (second >>> 11) * DOUBLE_UNIT;
+                doubles[i + 2] = (third >>> 11) * DOUBLE_UNIT;
+                doubles[i + 3] = (fourth >>> 11) * DOUBLE_UNIT;
+            }
+        }
+
+        for (; i < end; i++, position++) {
+            store(longs, doubles, i, randomAt(seed, position));
+        }
+    }
+
+
+    private static void store(long[] longs, double[] doubles, int i, long value) {
+        if (doubles == null) {
+            longs[i] = value;
+        } else {
+            doubles[i] = (value >>> 11) * DOUBLE_UNIT;
+        }
+    }
+
+
+    /**
+     * Fills an array with distinct random indexes, from {@code 0} up to a
+     * given size, as when picking a few records to audit out of many.
+     * <p>
+     * Uses Floyd's algorithm, which draws exactly one random number per index
+     * and never needs to list all the indexes it picks from. Each set of
+     * indexes is equally likely, but the order within the array is not
+     * random; shuffle it afterwards if that matters. Small amounts are checked
+     * for duplicates in the array itself, without allocating anything.
+     *
+     * @param size How many indexes to pick from
+     * @param target The array to fill, no longer than the size
+     * @throws IllegalArgumentException If the array is longer than the size
+     * @see #sampleIndexes(Random, int, int[])
+     */
+    public static final void sampleIndexes(int size, int[] target) {
+        sampleIndexes(ThreadLocalRandom.current(), size, target);
+    }
+
+
+    /**
+     * Fills an array with distinct random indexes, from {@code 0} up to a
+     * given size, using the given generator.
+     *
+     * @param random The generator to draw from
+     * @param size How many indexes to pick from
+     * @param target The array to fill, no longer than the size
+     * @throws IllegalArgumentException If the array is longer than the size
+     * @see #sampleIndexes(int, int[])
+     */
+    public static final void sampleIndexes(Random random, int size, int[] target) {
+        int count = target.length;
+        if (count > size) {
+            throw new IllegalArgumentException("Can't pick " + count + " distinct indexes out of " + size);
+        }
+
+        if (count <= LINEAR_SAMPLE_LIMIT) {
+            for (int i = 0, j = size - count; i < count; i++, j++) {
+                int index = randomBetween(random, 0, j);
+                target[i] = contains(target, i, index) ? j : index;
+            }
+            return;
+        }
+
+        boolean dense = isDenseSample(size, count);
+        long[] seen = dense ? newBitSet(size) : newIndexTable(count);
+        for (int i = 0, j = size - count; i < count; i++, j++) {
+            int index = randomBetween(random, 0, j);
+            // Every index drawn so far is below j, so j itself is always new
+            if (!addIndex(seen, dense, index)) {
+                index = j;
+                addIndex(seen, dense, index);
+            }
+            target[i] = index;
+        }
+    }
+
+
+    /**
+     * Fills an array with distinct random indexes, from {@code 0} up to a
+     * given size, which may be far larger than any array.
+     * <p>
+     * More than a million indexes picked sparsely out of the size are drawn
+     * with duplicates, which are then sorted out, so they come back sorted.
+     *
+     * @param size How many indexes to pick from
+     * @param target The array to fill, no longer than the size
+     * @throws IllegalArgumentException If the array is longer than the size
+     * @see #sampleIndexes(int, int[])
+     */
+    public static final void sampleIndexes(long size, long[] target) {
+        sampleIndexes(ThreadLocalRandom.current(), size, target);
+    }
+
+
+    /**
+     * Fills an array with distinct random indexes, from {@code 0} up to a
+     * given size, using the given generator.
+     *
+     * @param random The generator to draw from
+     * @param size How many indexes to pick from
+     * @param target The array to fill, no longer than the size
+     * @throws IllegalArgumentException If the array is longer than the size
+     * @see #sampleIndexes(int, int[])
+     */
+    public static final void sampleIndexes(Random random, long size, long[] target) {
+        int count = target.length;
+        if (count > size) {
+            throw new IllegalArgumentException("Can't pick " + count + " distinct indexes out of " + size);
+        }
+
+        if (count <= LINEAR_SAMPLE_LIMIT) {
+            for (int i = 0; i < count; i++) {
+                long j = size - count + i;
+                long index = randomBetween(random, 0, j);
+                target[i] = contains(target, i, index) ? j : index;
+            }
+            return;
+        }
+
+        boolean dense = isDenseSample(size, count);
+        if (!dense && count > MAX_INDEX_TABLE_COUNT) {
+            sampleSorted(random, size, target);
+            return;
+        }
+        long[] seen = dense ? newBitSet(size) : newIndexTable(count);
+        for (int i = 0; i < count; i++) {
+            long j = size - count + i;
+            long index = randomBetween(random, 0, j);
+            if (!addIndex(seen, dense, index)) {
+                index = j;
+                addIndex(seen, dense, index);
+            }
+            target[i] = index;
+        }
+    }
+
+
+    /**
+     * Fills an array with distinct random indexes by drawing them with
+     * duplicates, sorting them, and drawing again for the duplicates that were
+     * dropped, until they are all distinct. Every set of indexes is as likely
+     * as with Floyd's algorithm, and for a sparse sample, there are hardly any
+     * duplicates to draw again.
+     */
+    private static void sampleSorted(Random random, long size, long[] target) {
+        int distinct = 0;
+        while (distinct < target.length) {
+            for (int i = distinct; i < target.length; i++) {
+                target[i] = randomBetween(random, 0, size - 1);
+            }
+            Arrays.sort(target);
+
+            distinct = 1;
+            for (int i = 1; i < target.length; i++) {
+                if (target[i] != target[distinct - 1]) {
+                    target[distinct++] = target[i];
+                }
+            }
+        }
+    }
+
+
+    private static boolean contains(int[] array, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            if (array[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    private static boolean contains(long[] array, int length, long value) {
+        for (int i = 0; i < length; i++) {
+            if (array[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Whether the picked indexes are dense enough that a bit for every
+     * possible index takes less memory than a hash table of the picked ones.
+     */
+    private static boolean isDenseSample(long size, int count) {
+        return size <= 128L * count && size <= MAX_BIT_SET_SIZE;
+    }
+
+
+    private static long[] newBitSet(long size) {
+        return new long[(int) ((size + Long.SIZE - 1) >>> 6)];
+    }
+
+
+    /**
+     * Creates an open-addressing hash table for the given number of indexes,
+     * at most half full, where {@code -1} marks an empty slot.
+     */
+    private static long[] newIndexTable(int count) {
+        long[] table = new long[Integer.highestOneBit(count) << 2];
+        Arrays.fill(table, -1L);
+        return table;
+    }
+
+
+    /**
+     * Adds an index to a bit set or an index table.
+     *
+     * @return Whether the index was new
+     */
+    private static boolean addIndex(long[] seen, boolean bitSet, long index) {
+        if (bitSet) {
+            int word = (int) (index >>> 6);
+            long bit = 1L << index;
+            long old = seen[word];
+            seen[word] = old | bit;
+            return (old & bit) == 0;
+        }
+
+        int mask = seen.length - 1;
+        for (int slot = (int) mix64(index) & mask; ; slot = (slot + 1) & mask) {
+            if (seen[slot] == index) {
+                return false;
+            }
+            if (seen[slot] == -1L) {
+                seen[slot] = index;
+                return true;
+            }
+        }
+    }
+
+
+    /**
+     * Picks a random sample of the remaining elements of an iterator, where
+     * every element is equally likely to be picked.
+     *
+     * @param <T> The type of the elements
+     * @param iterator The elements to pick from
+     * @param size How many elements to pick
+     * @return A new list with the picked elements, or all of them if there
+     * are fewer than the size
+     * @see ReservoirSampler
+     */
+    public static final <T> List<T> reservoirSample(Iterator<? extends T> iterator, int size) {
+        ReservoirSampler<T> sampler = new ReservoirSampler<>(size);
+        sampler.addAll(iterator);
+        return sampler.getSample();
+    }
+
+
+    /**
+     * Picks a random sample of the remaining elements of a spliterator.
+     *
+     * @param <T> The type of the elements
+     * @param spliterator The elements to pick from
+     * @param size How many elements to pick
+     * @return A new list with the picked elements, or all of them if there
+     * are fewer than the size
+     * @see #reservoirSample(Iterator, int)
+     */
+    public static final <T> List<T> reservoirSample(Spliterator<? extends T> spliterator, int size) {
+        ReservoirSampler<T> sampler = new ReservoirSampler<>(size);
+        sampler.addAll(spliterator);
+        return sampler.getSample();
+    }
+
+
+    /**
+     * Picks a random sample of the elements of a stream.
+     *
+     * @param <T> The type of the elements
+     * @param stream The elements to pick from
+     * @param size How many elements to pick
+     * @return A new list with the picked elements, or all of them if there
+     * are fewer than the size
+     * @see #reservoirSample(Iterator, int)
+     */
+    public static final <T> List<T> reservoirSample(Stream<? extends T> stream, int size) {
+        ReservoirSampler<T> sampler = new ReservoirSampler<>(size);
+        sampler.addAll(stream);
+        return sampler.getSample();
+    }
+
+
+    /**
+     * Picks a random sample of the values of a stream, without boxing them.
+     *
+     * @param stream The values to pick from
+     * @param size How many values to pick
+     * @return A new array with the picked values, or all of them if there are
+     * fewer than the size
+     * @see #reservoirSample(Iterator, int)
+     */
+    public static final int[] reservoirSample(IntStream stream, int size) {
+        ReservoirSampler.OfInt sampler = new ReservoirSampler.OfInt(size);
+        sampler.addAll(stream);
+        return sampler.getSample();
+    }
+
+
+    /**
+     * Picks a random sample of the values of a stream, without boxing them.
+     *
+     * @param stream The values to pick from
+     * @param size How many values to pick
+     * @return A new array with the picked values, or all of them if there are
+     * fewer than the size
+     * @see #reservoirSample(Iterator, int)
+     */
+    public static final long[] reservoirSample(LongStream stream, int size) {
+        ReservoirSampler.OfLong sampler = new ReservoirSampler.OfLong(size);
+        sampler.addAll(stream);
+        return sampler.getSample();
+    }
+
+
+    /**
+     * Picks a random sample of the values of a stream, without boxing them.
+     *
+     * @param stream The values to pick from
+     * @param size How many values to pick
+     * @return A new array with the picked values, or all of them if there are
+     * fewer than the size
+     * @see #reservoirSample(Iterator, int)
+     */
+    public static final double[] reservoirSample(DoubleStream stream, int size) {
+        ReservoirSampler.OfDouble sampler = new ReservoirSampler.OfDouble(size);
+        sampler.addAll(stream);
+        return sampler.getSample();
+    }
+
+
+    /**
+     * Shuffles an array in place, so that every order is equally likely.
+     *
+     * @param array The array to shuffle
+     * @see #shuffle(Random, int[])
+     * @see #parallelShuffle(int[])
+     */
+    public static final void shuffle(int[] array) {
+        shuffle(ThreadLocalRandom.current(), array);
+    }
+
+
+    /**
+     * Shuffles an array in place with the Fisher-Yates algorithm, using the
+     * given generator.
+     *
+     * @param random The generator to draw from
+     * @param array The array to shuffle
+     */
+    public static final void shuffle(Random random, int[] array) {
+        for (int i = array.length - 1; i > 0; i--) {
+            int j = randomBetween(random, 0, i);
+            int value = array[i];
+            array[i] = array[j];
+            array[j] = value;
+        }
+    }
+
+
+    /**
+     * Shuffles an array in place, so that every order is equally likely.
+     *
+     * @param array The array to shuffle
+     * @see #shuffle(Random, long[])
+     * @see #parallelShuffle(long[])
+     */
+    public static final void shuffle(long[] array) {
+        shuffle(ThreadLocalRandom.current(), array);
+    }
+
+
+    /**
+     * Shuffles an array in place with the Fisher-Yates algorithm, using the
+     * given generator.
+     *
+     * @param random The generator to draw from
+     * @param array The array to shuffle
+     */
+    public static final void shuffle(Random random, long[] array) {
+        for (int i = array.length - 1; i > 0; i--) {
+            int j = randomBetween(random, 0, i);
+            long value = array[i];
+            array[i] = array[j];
+            array[j] = value;
+        }
+    }
+
+
+    /**
+     * Shuffles an array in place, so that every order is equally likely.
+     *
+     * @param array The array to shuffle
+     * @see #shuffle(Random, double[])
+     * @see #parallelShuffle(double[])
+     */
+    public static final void shuffle(double[] array) {
+        shuffle(ThreadLocalRandom.current(), array);
+    }
+
+
+    /**
+     * Shuffles an array in place with the Fisher-Yates algorithm, using the
+     * given generator.
+     *
+     * @param random The generator to draw from
+     * @param array The array to shuffle
+     */
+    public static final void shuffle(Random random, double[] array) {
+        for (int i = array.length - 1; i > 0; i--) {
+            int j = randomBetween(random, 0, i);
+            double value = array[i];
+            array[i] = array[j];
+            array[j] = value;
+        }
+    }
+
+
+    /**
+     * Shuffles a large array in place, using every core of the common
+     * fork-join pool.
+     * <p>
+     * Uses the MergeShuffle algorithm of Bacher et al.: the array is split
+     * into blocks that fit in the CPU cache and are shuffled with Fisher-Yates
+     * in parallel, then merged back together by randomly interleaving
+     * neighbouring halves, which keeps every order equally likely. The merges
+     * add work, so this only pays off with several cores; without them, it
+     * falls back to {@link #shuffle(int[])}.
+     *
+     * @param array The array to shuffle
+     * @see #parallelShuffle(SeededRandom, int[])
+     */
+    public static final void parallelShuffle(int[] array) {
+        if (ForkJoinPool.getCommonPoolParallelism() <= 1) {
+            shuffle(array);
+        } else {
+            ForkJoinPool.commonPool().invoke(new IntMergeShuffle(array, 0, array.length, null));
+        }
+    }
+
+
+    /**
+     * Shuffles a large array in place, using every core of the common
+     * fork-join pool, with the same result for the same seed however the
+     * work is scheduled.
+     * <p>
+     * This always uses MergeShuffle, even on a single core, so that the
+     * result doesn't depend on the number of cores.
+     *
+     * @param random The generator to draw from, which is split for every
+     * block
+     * @param array The array to shuffle
+     * @see #parallelShuffle(int[])
+     */
+    public static final void parallelShuffle(SeededRandom random, int[] array) {
+        ForkJoinPool.commonPool().invoke(new IntMergeShuffle(array, 0, array.length, random));
+    }
+
+
+    /**
+     * Shuffles a large array in place, using every core of the common
+     * fork-join pool.
+     *
+     * @param array The array to shuffle
+     * @see #parallelShuffle(int[])
+     */
+    public static final void parallelShuffle(long[] array) {
+        if (ForkJoinPool.getCommonPoolParallelism() <= 1) {
+            shuffle(array);
+        } else {
+            ForkJoinPool.commonPool().invoke(new LongMergeShuffle(array, 0, array.length, null));
+        }
+    }
+
+
+    /**
+     * Shuffles a large array in place, using every core of the common
+     * fork-join pool, with the same result for the same seed.
+     *
+     * @param random The generator to draw from, which is split for every
+     * block
+     * @param array The array to shuffle
+     * @see #parallelShuffle(SeededRandom, int[])
+     */
+    public static final void parallelShuffle(SeededRandom random, long[] array) {
+        ForkJoinPool.commonPool().invoke(new LongMergeShuffle(array, 0, array.length, random));
+    }
+
+
+    /**
+     * Shuffles a large array in place, using every core of the common
+     * fork-join pool.
+     *
+     * @param array The array to shuffle
+     * @see #parallelShuffle(int[])
+     */
+    public static final void parallelShuffle(double[] array) {
+        if (ForkJoinPool.getCommonPoolParallelism() <= 1) {
+            shuffle(array);
+        } else {
+            ForkJoinPool.commonPool().invoke(new DoubleMergeShuffle(array, 0, array.length, null));
+        }
+    }
+
+
+    /**
+     * Shuffles a large array in place, using every core of the common
+     * fork-join pool, with the same result for the same seed.
+     *
+     * @param random The generator to draw from, which is split for every
+     * block
+     * @param array The array to shuffle
+     * @see #parallelShuffle(SeededRandom, int[])
+     */
+    public static final void parallelShuffle(SeededRandom random, double[] array) {
+        ForkJoinPool.commonPool().invoke(new DoubleMergeShuffle(array, 0, array.length, random));
+    }
+
+
+    /**
+     * Create a random number from the standard normal distribution, with a
+     * mean of 0 and a standard deviation of 1.
+     * <p>
+     * The number is picked with the ziggurat method of Marsaglia and Tsang,
+     * which covers the bell curve with 256 stacked rectangles of equal area.
+     * A single random 64-bit value picks a rectangle with its lowest bits,
+     * and a point within it with its highest 53 bits. That point is under the
+     * curve about 99% of the time, so a number costs one random value, a
+     * multiplication and a comparison, unlike the logarithm and square root
+     * of {@link Random#nextGaussian()}.
+     *
+     * @return The random number
+     * @see #randomGaussian(Random)
+     */
+    public static final double randomGaussian() {
+        return randomGaussian(ThreadLocalRandom.current());
+    }
+
+
+    /**
+     * Create a random number from the standard normal distribution, using
+     * the given generator.
+     *
+     * @param random The generator to draw from
+     * @return The random number
+     * @see #randomGaussian()
+     */
+    public static final double randomGaussian(Random random) {
+        return Ziggurat.gaussian(random.nextLong(), random);
+    }
+
+
+    /**
+     * Create a random number from the exponential distribution with a mean
+     * of 1, such as the time between independent events arriving at a rate
+     * of one per unit of time. Multiply it by the mean for other rates.
+     * <p>
+     * Uses the same ziggurat method as {@link #randomGaussian()}.
+     *
+     * @return The random number
+     * @see #randomExponential(Random)
+     */
+    public static final double randomExponential() {
+        return randomExponential(ThreadLocalRandom.current());
+    }
+
+
+    /**
+     * Create a random number from the exponential distribution with a mean
+     * of 1, using the given generator.
+     *
+     * @param random The generator to draw from
+     * @return The random number
+     * @see #randomExponential()
+     */
+    public static final double randomExponential(Random random) {
+        return Ziggurat.exponential(random.nextLong(), random);
+    }
+
+
+    /**
+     * Fills an array with random numbers from the standard normal
+     * distribution.
+     *
+     * @param target The array to fill
+     * @see #fill(int[])
+     * @see #randomGaussian()
+     */
+    public static final void fillGaussian(double[] target) {
+        fillGaussian(target, 0, 1);
+    }
+
+
+    /**
+     * Fills an array with random numbers from a normal distribution.
+     *
+     * @param target The array to fill
+     * @param mean The mean of the distribution
+     * @param standardDeviation The standard deviation of the distribution
+     * @see #fill(int[])
+     * @see #randomGaussian()
+     */
+    public static final void fillGaussian(double[] target, double mean, double standardDeviation) {
+        if (!(standardDeviation >= 0) || Double.isInfinite(standardDeviation)) {
+            throw new IllegalArgumentException("Invalid standard deviation: " + standardDeviation);
+        }
+
+        // The rare points outside the curve draw their extra values from the thread's generator
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long state = random.nextLong();
+        for (int i = 0; i < target.length; i++) {
+            target[i] = mean + standardDeviation * Ziggurat.gaussian(mix64(state += GOLDEN_GAMMA), random);
+        }
+    }
+
+
+    /**
+     * Fills an array with random numbers from the exponential distribution
+     * with a mean of 1.
+     *
+     * @param target The array to fill
+     * @see #fill(int[])
+     * @see #randomExponential()
+     */
+    public static final void fillExponential(double[] target) {
+        fillExponential(target, 1);
+    }
+
+
+    /**
+     * Fills an array with random numbers from an exponential distribution.
+     *
+     * @param target The array to fill
+     * @param mean The mean of the distribution, which is the inverse of the
+     * rate
+     * @see #fill(int[])
+     * @see #randomExponential()
+     */
+    public static final void fillExponential(double[] target, double mean) {
+        if (!(mean > 0) || Double.isInfinite(mean)) {
+            throw new IllegalArgumentException("Invalid mean: " + mean);
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long state = random.nextLong();
+        for (int i = 0; i < target.length; i++) {
+            target[i] = mean * Ziggurat.exponential(mix64(state += GOLDEN_GAMMA), random);
+        }
+    }
+
+
+    /**
+     * The output function of SplitMix64, which turns consecutive states into
+     * independent-looking 64-bit values. It spreads every input bit over the
+     * whole output, so the other classes also use it to hash and to derive
+     * keys.
+     */
+    static long mix64(long state) {
+        long z = state;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
     }
 
 
@@ -29,7 +1228,308 @@ public final class Randomize {
      * @return The randomized char
      */
     public static final char randomCharFromString(String input) {
-        int randomizedPosition = new Random().nextInt(input.length());
+        int randomizedPosition = ThreadLocalRandom.current().nextInt(input.length());
         return input.charAt(randomizedPosition);
     }
+
+
+    /**
+     * Shuffles a range of an array with MergeShuffle. The subclasses only
+     * supply the swap for their type of array.
+     */
+    private abstract static class MergeShuffle extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        final int from;
+
+        final int to;
+
+        /**
+         * The generator of this task, or {@code null} to use the
+         * {@link ThreadLocalRandom} of whichever thread runs it.
+         */
+        private final SeededRandom seeded;
+
+
+        MergeShuffle(int from, int to, SeededRandom seeded) {
+            this.from = from;
+            this.to = to;
+            this.seeded = seeded;
+        }
+
+
+        abstract MergeShuffle subtask(int subFrom, int subTo, SeededRandom subSeeded);
+
+
+        abstract void swap(int i, int j);
+
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_SHUFFLE_THRESHOLD) {
+                Random random = seeded != null ? seeded : ThreadLocalRandom.current();
+                for (int i = to - 1; i > from; i--) {
+                    swap(i, from + randomBetween(random, 0, i - from));
+                }
+                return;
+            }
+
+            // Split the generators before forking, so each half gets the same one however the tasks are run
+            int middle = (from + to) >>> 1;
+            invokeAll(subtask(from, middle, seeded != null ? seeded.split() : null),
+                    subtask(middle, to, seeded != null ? seeded.split() : null));
+            merge(seeded != null ? seeded : ThreadLocalRandom.current(), middle);
+        }
+
+
+        /**
+         * Randomly interleaves the two shuffled halves: a coin flip decides
+         * whether the next element comes from the left or the right half, and
+         * once either half runs out, the rest is inserted at random positions.
+         */
+        private void merge(Random random, int middle) {
+            int i = from;
+            int j = middle;
+            long bits = 0;
+            int bitCount = 0;
+            while (true) {
+                if (bitCount == 0) {
+                    bits = random.nextLong();
+                    bitCount = Long.SIZE;
+                }
+                // 1 takes the next element from the right half, 0 keeps the one from the left
+                int fromRight = (int) (bits >>> 63);
+                bits <<= 1;
+                bitCount--;
+
+                // Written without branches on the coin flip, which would be mispredicted half of the time
+                if ((((j - to) & -fromRight) | ((i - j) & (fromRight - 1))) == 0) {
+                    break;
+                }
+                swap(i, i + ((j - i) & -fromRight));
+                j += fromRight;
+                i++;
+            }
+
+            for (; i < to; i++) {
+                swap(i, from + randomBetween(random, 0, i - from));
+            }
+        }
+    }
+
+
+    private static final class IntMergeShuffle extends MergeShuffle {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] array;
+
+
+        IntMergeShuffle(int[] array, int from, int to, SeededRandom seeded) {
+            super(from, to, seeded);
+            this.array = array;
+        }
+
+
+        @Override
+        MergeShuffle subtask(int subFrom, int subTo, SeededRandom subSeeded) {
+            return new IntMergeShuffle(array, subFrom, subTo, subSeeded);
+        }
+
+
+        @Override
+        void swap(int i, int j) {
+            int value = array[i];
+            array[i] = array[j];
+            array[j] = value;
+        }
+    }
+
+
+    private static final class LongMergeShuffle extends MergeShuffle {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long[] array;
+
+
+        LongMergeShuffle(long[] array, int from, int to, SeededRandom seeded) {
+            super(from, to, seeded);
+            this.array = array;
+        }
+
+
+        @Override
+        MergeShuffle subtask(int subFrom, int subTo, SeededRandom subSeeded) {
+            return new LongMergeShuffle(array, subFrom, subTo, subSeeded);
+        }
+
+
+        @Override
+        void swap(int i, int j) {
+            long value = array[i];
+            array[i] = array[j];
+            array[j] = value;
+        }
+    }
+
+
+    private static final class DoubleMergeShuffle extends MergeShuffle {
+
+        private static final long serialVersionUID = 1L;
+
+        private final double[] array;
+
+
+        DoubleMergeShuffle(double[] array, int from, int to, SeededRandom seeded) {
+            super(from, to, seeded);
+            this.array = array;
+        }
+
+
+        @Override
+        MergeShuffle subtask(int subFrom, int subTo, SeededRandom subSeeded) {
+            return new DoubleMergeShuffle(array, subFrom, subTo, subSeeded);
+        }
+
+
+        @Override
+        void swap(int i, int j) {
+            double value = array[i];
+            array[i] = array[j];
+            array[j] = value;
+        }
+    }
+
+
+    /**
+     * The ziggurat method for the normal and exponential distributions, with
+     * its tables in a class of their own, so they're only computed when first
+     * used.
+     * <p>
+     * Layer 0 is the base, whose width includes the tail beyond the last
+     * rectangle. Layer {@code i} is a rectangle {@code X[i]} wide, which is
+     * entirely under the curve up to {@code X[i + 1]}, and its height runs
+     * from {@code Y[i]} to {@code Y[i + 1]}.
+     */
+    private static final class Ziggurat {
+
+        private static final int LAYERS = 256;
+
+        private static final int LAYER_MASK = LAYERS - 1;
+
+        /**
+         * The right edge of the base rectangle, and the area of every layer,
+         * of the 256-layer ziggurats published by Marsaglia and Tsang.
+         */
+        private static final double GAUSSIAN_R = 3.6541528853610088;
+
+        private static final double GAUSSIAN_V = 0.00492867323399;
+
+        private static final double EXPONENTIAL_R = 7.69711747013104972;
+
+        private static final double EXPONENTIAL_V = 0.0039496598225815571993;
+
+        private static final double[] GAUSSIAN_X = new double[LAYERS + 1];
+
+        private static final double[] GAUSSIAN_Y = new double[LAYERS + 1];
+
+        private static final double[] EXPONENTIAL_X = new double[LAYERS + 1];
+
+        private static final double[] EXPONENTIAL_Y = new double[LAYERS + 1];
+
+        static {
+            GAUSSIAN_X[0] = GAUSSIAN_V / Math.exp(-0.5 * GAUSSIAN_R * GAUSSIAN_R);
+            GAUSSIAN_X[1] = GAUSSIAN_R;
+            EXPONENTIAL_X[0] = EXPONENTIAL_V / Math.exp(-EXPONENTIAL_R);
+            EXPONENTIAL_X[1] = EXPONENTIAL_R;
+
+            // Each layer is as high as needed for its area, which gives the width of the next one up
+            for (int i = 1; i < LAYERS - 1; i++) {
+                double gaussian = GAUSSIAN_X[i];
+                GAUSSIAN_X[i + 1] = Math.sqrt(-2 * Math.log(GAUSSIAN_V / gaussian + Math.exp(-0.5 * gaussian * gaussian)));
+                double exponential = EXPONENTIAL_X[i];
+                EXPONENTIAL_X[i + 1] = -Math.log(EXPONENTIAL_V / exponential + Math.exp(-exponential));
+            }
+
+            for (int i = 0; i < LAYERS; i++) {
+                GAUSSIAN_Y[i] = Math.exp(-0.5 * GAUSSIAN_X[i] * GAUSSIAN_X[i]);
+                EXPONENTIAL_Y[i] = Math.exp(-EXPONENTIAL_X[i]);
+            }
+            GAUSSIAN_Y[LAYERS] = 1;
+            EXPONENTIAL_Y[LAYERS] = 1;
+        }
+
+
+        /**
+         * Picks a number from the standard normal distribution.
+         *
+         * @param bits 64 random bits for the first attempt
+         * @param random The generator for further attempts
+         */
+        static double gaussian(long bits, Random random) {
+            while (true) {
+                int layer = (int) bits & LAYER_MASK;
+                // The upper 53 bits as a signed fraction from -1 up to 1
+                double x = (bits >> 11) * 0x1.0p-52 * GAUSSIAN_X[layer];
+                if (Math.abs(x) < GAUSSIAN_X[layer + 1]) {
+                    return x;
+                }
+
+                if (layer == 0) {
+                    return gaussianTail(x < 0, random);
+                }
+                double y = GAUSSIAN_Y[layer] + (GAUSSIAN_Y[layer + 1] - GAUSSIAN_Y[layer]) * random.nextDouble();
+                if (y < Math.exp(-0.5 * x * x)) {
+                    return x;
+                }
+                bits = random.nextLong();
+            }
+        }
+
+
+        /**
+         * Picks a number from the part of the normal distribution beyond the
+         * base rectangle, with Marsaglia's method.
+         */
+        private static double gaussianTail(boolean negative, Random random) {
+            double x;
+            double y;
+            do {
+                x = -Math.log(1.0 - random.nextDouble()) / GAUSSIAN_R;
+                y = -Math.log(1.0 - random.nextDouble());
+            } while (y + y < x * x);
+            return negative ? -(GAUSSIAN_R + x) : GAUSSIAN_R + x;
+        }
+
+
+        /**
+         * Picks a number from the exponential distribution with a mean of 1.
+         *
+         * @param bits 64 random bits for the first attempt
+         * @param random The generator for further attempts
+         */
+        static double exponential(long bits, Random random) {
+            // Beyond the base rectangle, the distribution is the same again, shifted to the right
+            double offset = 0;
+            while (true) {
+                int layer = (int) bits & LAYER_MASK;
+                double x = (bits >>> 11) * DOUBLE_UNIT * EXPONENTIAL_X[layer];
+                if (x < EXPONENTIAL_X[layer + 1]) {
+                    return offset + x;
+                }
+
+                if (layer == 0) {
+                    offset += EXPONENTIAL_R;
+                } else {
+                    double y = EXPONENTIAL_Y[layer] + (EXPONENTIAL_Y[layer + 1] - EXPONENTIAL_Y[layer]) * random.nextDouble();
+                    if (y < Math.exp(-x)) {
+                        return offset + x;
+                    }
+                }
+                bits = random.nextLong();
+            }
+        }
+    }
 }
@@ -0,0 +1,495 @@
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+
+/**
+ * Keeps a fixed-size random sample of a stream of unknown, possibly
+ * unbounded, length, where every element seen so far is equally likely to be
+ * in the sample.
+ * <p>
+ * The sampler uses Li's Algorithm L: instead of drawing a random number for
+ * every element, it draws how many elements to skip until the next one that
+ * enters the sample. Once the sample is full, each element only costs a
+ * counter comparison, and random numbers are only drawn for the few that are
+ * kept. The nested classes {@link OfInt}, {@link OfLong} and
+ * {@link OfDouble} keep primitive values without boxing them.
+ * <p>
+ * A sampler is not thread-safe. Parallel streams are fed to it sequentially.
+ *
+ * @author Christian
+ * @param <T> The type of the elements
+ * @see Randomize#reservoirSample(Stream, int)
+ */
+public final class ReservoirSampler<T> implements Consumer<T> {
+
+    private final Skips skips;
+
+    private final Object[] reservoir;
+
+
+    /**
+     * Creates a sampler using the random generator of the current thread.
+     *
+     * @param size How many elements to keep
+     */
+    public ReservoirSampler(int size) {
+        this(size, null);
+    }
+
+
+    /**
+     * Creates a sampler using the given random generator.
+     *
+     * @param size How many elements to keep
+     * @param random The generator to draw from, or {@code null} to use the
+     * one of the current thread
+     */
+    public ReservoirSampler(int size, Random random) {
+        this.skips = new Skips(size, random);
+        this.reservoir = new Object[size];
+    }
+
+
+    /**
+     * Offers the next element of the stream to the sample.
+     *
+     * @param element The element
+     */
+    @Override
+    public void accept(T element) {
+        int slot = skips.offer();
+        if (slot >= 0) {
+            reservoir[slot] = element;
+        }
+    }
+
+
+    /**
+     * Offers all remaining elements of an iterator to the sample.
+     *
+     * @param iterator The elements
+     */
+    public void addAll(Iterator<? extends T> iterator) {
+        iterator.forEachRemaining(this);
+    }
+
+
+    /**
+     * Offers all remaining elements of a spliterator to the sample.
+     *
+     * @param spliterator The elements
+     */
+    public void addAll(Spliterator<? extends T> spliterator) {
+        spliterator.forEachRemaining(this);
+    }
+
+
+    /**
+     * Offers all elements of a stream to the sample.
+     *
+     * @param stream The elements
+     */
+    public void addAll(Stream<? extends T> stream) {
+        stream.sequential().forEach(this);
+    }
+
+
+    /**
+     * Returns the sample so far, which holds every element as long as fewer
+     * elements were offered than the size of the sample.
+     *
+     * @return A new list with the sampled elements, in no particular order
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> getSample() {
+        int length = skips.sampleLength();
+        List<T> sample = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            sample.add((T) reservoir[i]);
+        }
+        return sample;
+    }
+
+
+    /**
+     * @return How many elements were offered so far
+     */
+    public long getCount() {
+        return skips.count;
+    }
+
+
+    /**
+     * Keeps a random sample of {@code int} values.
+     */
+    public static final class OfInt implements IntConsumer {
+
+        private final Skips skips;
+
+        private final int[] reservoir;
+
+
+        /**
+         * Creates a sampler using the random generator of the current thread.
+         *
+         * @param size How many values to keep
+         */
+        public OfInt(int size) {
+            this(size, null);
+        }
+
+
+        /**
+         * Creates a sampler using the given random generator.
+         *
+         * @param size How many values to keep
+         * @param random The generator to draw from, or {@code null} to use
+         * the one of the current thread
+         */
+        public OfInt(int size, Random random) {
+            this.skips = new Skips(size, random);
+            this.reservoir = new int[size];
+        }
+
+
+        /**
+         * Offers the next value of the stream to the sample.
+         *
+         * @param value The value
+         */
+        @Override
+        public void accept(int value) {
+            int slot = skips.offer();
+            if (slot >= 0) {
+                reservoir[slot] = value;
+            }
+        }
+
+
+        /**
+         * Offers all remaining values of an iterator to the sample.
+         *
+         * @param iterator The values
+         */
+        public void addAll(PrimitiveIterator.OfInt iterator) {
+            iterator.forEachRemaining(this);
+        }
+
+
+        /**
+         * Offers all remaining values of a spliterator to the sample.
+         *
+         * @param spliterator The values
+         */
+        public void addAll(Spliterator.OfInt spliterator) {
+            spliterator.forEachRemaining(this);
+        }
+
+
+        /**
+         * Offers all values of a stream to the sample.
+         *
+         * @param stream The values
+         */
+        public void addAll(IntStream stream) {
+            stream.sequential().forEach(this);
+        }
+
+
+        /**
+         * @return A new array with the sampled values, in no particular order
+         */
+        public int[] getSample() {
+            return Arrays.copyOf(reservoir, skips.sampleLength());
+        }
+
+
+        /**
+         * @return How many values were offered so far
+         */
+        public long getCount() {
+            return skips.count;
+        }
+    }
+
+
+    /**
+     * Keeps a random sample of {@code long} values.
+     */
+    public static final class OfLong implements LongConsumer {
+
+        private final Skips skips;
+
+        private final long[] reservoir;
+
+
+        /**
+         * Creates a sampler using the random generator of the current thread.
+         *
+         * @param size How many values to keep
+         */
+        public OfLong(int size) {
+            this(size, null);
+        }
+
+
+        /**
+         * Creates a sampler using the given random generator.
+         *
+         * @param size How many values to keep
+         * @param random The generator to draw from, or {@code null} to use
+         * the one of the current thread
+         */
+        public OfLong(int size, Random random) {
+            this.skips = new Skips(size, random);
+            this.reservoir = new long[size];
+        }
+
+
+        /**
+         * Offers the next value of the stream to the sample.
+         *
+         * @param value The value
+         */
+        @Override
+        public void accept(long value) {
+            int slot = skips.offer();
+            if (slot >= 0) {
+                reservoir[slot] = value;
+            }
+        }
+
+
+        /**
+         * Offers all remaining values of an iterator to the sample.
+         *
+         * @param iterator The values
+         */
+        public void addAll(PrimitiveIterator.OfLong iterator) {
+            iterator.forEachRemaining(this);
+        }
+
+
+        /**
+         * Offers all remaining values of a spliterator to the sample.
+         *
+         * @param spliterator The values
+         */
+        public void addAll(Spliterator.OfLong spliterator) {
+            spliterator.forEachRemaining(this);
+        }
+
+
+        /**
+         * Offers all values of a stream to the sample.
+         *
+         * @param stream The values
+         */
+        public void addAll(LongStream stream) {
+            stream.sequential().forEach(this);
+        }
+
+
+        /**
+         * @return A new array with the sampled values, in no particular order
+         */
+        public long[] getSample() {
+            return Arrays.copyOf(reservoir, skips.sampleLength());
+        }
+
+
+        /**
+         * @return How many values were offered so far
+         */
+        public long getCount() {
+            return skips.count;
+        }
+    }
+
+
+    /**
+     * Keeps a random sample of {@code double} values.
+     */
+    public static final class OfDouble implements DoubleConsumer {
+
+        private final Skips skips;
+
+        private final double[] reservoir;
+
+
+        /**
+         * Creates a sampler using the random generator of the current thread.
+         *
+         * @param size How many values to keep
+         */
+        public OfDouble(int size) {
+            this(size, null);
+        }
+
+
+        /**
+         * Creates a sampler using the given random generator.
+         *
+         * @param size How many values to keep
+         * @param random The generator to draw from, or {@code null} to use
+         * the one of the current thread
+         */
+        public OfDouble(int size, Random random) {
+            this.skips = new Skips(size, random);
+            this.reservoir = new double[size];
+        }
+
+
+        /**
+         * Offers the next value of the stream to the sample.
+         *
+         * @param value The value
+         */
+        @Override
+        public void accept(double value) {
+            int slot = skips.offer();
+            if (slot >= 0) {
+                reservoir[slot] = value;
+            }
+        }
+
+
+        /**
+         * Offers all remaining values of an iterator to the sample.
+         *
+         * @param iterator The values
+         */
+        public void addAll(PrimitiveIterator.OfDouble iterator) {
+            iterator.forEachRemaining(this);
+        }
+
+
+        /**
+         * Offers all remaining values of a spliterator to the sample.
+         *
+         * @param spliterator The values
+         */
+        public void addAll(Spliterator.OfDouble spliterator) {
+            spliterator.forEachRemaining(this);
+        }
+
+
+        /**
+         * Offers all values of a stream to the sample.
+         *
+         * @param stream The values
+         */
+        public void addAll(DoubleStream stream) {
+            stream.sequential().forEach(this);
+        }
+
+
+        /**
+         * @return A new array with the sampled values, in no particular order
+         */
+        public double[] getSample() {
+            return Arrays.copyOf(reservoir, skips.sampleLength());
+        }
+
+
+        /**
+         * @return How many values were offered so far
+         */
+        public long getCount() {
+            return skips.count;
+        }
+    }
+
+
+    /**
+     * The bookkeeping of Algorithm L, shared by the samplers of every type:
+     * which element of the stream is the next to enter the sample, and which
+     * slot it replaces.
+     */
+    private static final class Skips {
+
+        private final int size;
+
+        private final Random random;
+
+        private long count;
+
+        /**
+         * The index of the next element to keep. Until the sample is full,
+         * that is simply the next element.
+         */
+        private long nextKept;
+
+        /**
+         * The largest of the random keys of the kept elements, when every
+         * element would get a uniform random key and the smallest ones are
+         * kept.
+         */
+        private double largestKey = 1.0;
+
+
+        Skips(int size, Random random) {
+            if (size <= 0) {
+                throw new IllegalArgumentException("The size of the sample must be positive: " + size);
+            }
+            this.size = size;
+            this.random = random;
+        }
+
+
+        /**
+         * Counts the next element.
+         *
+         * @return The slot to store the element in, or {@code -1} to skip it
+         */
+        int offer() {
+            long index = count++;
+            if (index < nextKept) {
+                return -1;
+            }
+
+            if (index < size - 1) {
+                nextKept = index + 1;
+                return (int) index;
+            }
+
+            Random generator = random != null ? random : ThreadLocalRandom.current();
+            int slot = index < size ? (int) index : generator.nextInt(size);
+
+            largestKey *= Math.exp(Math.log(nextOpenDouble(generator)) / size);
+            double skip = Math.floor(Math.log(nextOpenDouble(generator)) / Math.log1p(-largestKey));
+            // The skip grows with the length of the stream, and can exceed any count in practice
+            nextKept = skip < Long.MAX_VALUE - index - 1 ? index + 1 + (long) skip : Long.MAX_VALUE;
+            return slot;
+        }
+
+
+        int sampleLength() {
+            return (int) Math.min(count, size);
+        }
+
+
+        private static double nextOpenDouble(Random random) {
+            double value;
+            do {
+                value = random.nextDouble();
+            } while (value == 0);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+
+import java.util.Random;
+
+
+/**
+ * A seeded, splittable random number generator, for reproducible results in
+ * parallel workloads.
+ * <p>
+ * The generator uses the SplitMix64 algorithm, the same one as
+ * {@link java.util.SplittableRandom}, but extends {@link Random} so that it
+ * can be passed to the methods in {@link Randomize} and to anything else
+ * accepting a {@link Random}. The same seed always produces the same values.
+ * <p>
+ * To keep results independent of how the work is scheduled, every task gets a
+ * generator of its own, derived from one root seed:
+ * <ul>
+ * <li>fork-join tasks call {@link #split()} on the parent generator before
+ * forking, so each child gets the same stream however the tasks are run</li>
+ * <li>parallel streams and sharded jobs use
+ * {@link #substream(long, long)} with the index of the element or shard,
+ * which gives the same generator for the same index on any thread</li>
+ * </ul>
+ * A single instance is not safe to share between threads, so it shouldn't be.
+ *
+ * @author Christian
+ */
+public final class SeededRandom extends Random {
+
+    private static final long serialVersionUID = 1L;
+
+    private long seed;
+
+    private final long gamma;
+
+    /**
+     * Set once the constructor is done, since {@link Random}'s constructor
+     * calls {@link #setSeed(long)} before the fields are set.
+     */
+    private final boolean initialized;
+
+
+    /**
+     * Creates a generator with the given seed.
+     *
+     * @param seed The seed
+     */
+    public SeededRandom(long seed) {
+        this(seed, Randomize.GOLDEN_GAMMA);
+    }
+
+
+    /**
+     * Creates a generator from a seed and an increment. This class repeats the
+     * internals of {@link java.util.SplittableRandom} instead of delegating to
+     * one, because {@link #substream(long, long)} needs exactly this
+     * constructor, which is private there.
+     */
+    private SeededRandom(long seed, long gamma) {
+        // The seedless constructor of Random would contend on its shared seed uniquifier for nothing
+        super(0L);
+        this.seed = seed;
+        this.gamma = gamma;
+        this.initialized = true;
+    }
+
+
+    /**
+     * Returns the generator for a numbered sub-stream of a root seed.
+     * <p>
+     * The same root seed and index always give the same generator, and
+     * different indexes give independent ones, so each element of a parallel
+     * stream, or each shard of a job, can get its own generator without
+     * depending on which thread it runs on.
+     *
+     * @param rootSeed The seed of the whole run
+     * @param index The number of the sub-stream
+     * @return The generator for that sub-stream
+     */
+    public static SeededRandom substream(long rootSeed, long index) {
+        // Scramble the root first, so neighbouring root seeds don't give overlapping sub-streams
+        long root = Randomize.mix64(rootSeed);
+        return new SeededRandom(Randomize.mix64(root + index * Randomize.GOLDEN_GAMMA), mixGamma(~root + index * Randomize.GOLDEN_GAMMA));
+    }
+
+
+    /**
+     * Creates a new generator from this one, for a task that is about to be
+     * forked. Both generators can then be used independently, and the values
+     * of each only depend on the seed and the order of the calls to
+     * {@code split()}.
+     *
+     * @return The new generator
+     */
+    public SeededRandom split() {
+        return new SeededRandom(nextLong(), mixGamma(nextSeed()));
+    }
+
+
+    @Override
+    public long nextLong() {
+        return Randomize.mix64(nextSeed());
+    }
+
+
+    @Override
+    public int nextInt() {
+        return (int) (nextLong() >>> Integer.SIZE);
+    }
+
+
+    @Override
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("The bound must be positive: " + bound);
+        }
+        return Randomize.randomBetween(this, 0, bound - 1);
+    }
+
+
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * Randomize.DOUBLE_UNIT;
+    }
+
+
+    @Override
+    public boolean nextBoolean() {
+        return nextLong() < 0;
+    }
+
+
+    @Override
+    protected int next(int bits) {
+        return (int) (nextLong() >>> (Long.SIZE - bits));
+    }
+
+
+    /**
+     * Restarts the generator from a new seed, keeping the increment it was
+     * created with. Afterwards it gives the same values as any generator of
+     * the same increment set to the same seed; for a generator created with
+     * {@link #SeededRandom(long)}, that is a new one with this seed.
+     *
+     * @param seed The new seed
+     */
+    @Override
+    public void setSeed(long seed) {
+        // Random's constructor calls this too, before this class has set its own fields
+        if (initialized) {
+            // Also drops the second Gaussian value that Random may have cached
+            super.setSeed(seed);
+            this.seed = seed;
+        }
+    }
+
+
+    private long nextSeed() {
+        return seed += gamma;
+    }
+
+
+    /**
+     * Turns a value into an odd increment with enough bit transitions to
+     * give a good stream, as done by {@link java.util.SplittableRandom}.
+     */
+    private static long mixGamma(long value) {
+        long z = value;
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        int transitions = Long.bitCount(z ^ (z >>> 1));
+        return transitions < 24 ? z ^ 0xAAAAAAAAAAAAAAAAL : z;
+    }
+}
@@ -0,0 +1,119 @@
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Generates unique, incremented ID's shared by several processes on the same
+ * host, through a counter in a memory-mapped file.
+ * <p>
+ * Every process maps the same file, and the counter is advanced with an atomic
+ * fetch-and-add directly on the shared memory. The processes coordinate at the
+ * speed of a single atomic instruction, without file locks, sockets or a
+ * separate sequence service.
+ * <p>
+ * The counter lives in the page cache of the operating system, so it survives
+ * a crash of any or all of the processes, but not a crash or power loss of the
+ * host itself. Use {@link PersistentIdGenerator} where that matters.
+ *
+ * @author Christian
+ */
+public final class SharedIdGenerator implements Closeable {
+
+    /**
+     * Gives atomic access to the {@code long} values of a direct buffer. The
+     * counter is aligned to 8 bytes, as these operations require.
+     */
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private static final int COUNTER_OFFSET = 0;
+
+    /**
+     * The counter gets a whole cache line of the file to itself.
+     */
+    private static final int MAPPED_SIZE = 64;
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer shared;
+
+
+    /**
+     * Opens the shared counter in the given file, creating the file with a
+     * counter starting at 0 if it doesn't exist.
+     * <p>
+     * Every process that should share the same ID space must open the same
+     * file. All of them must run on the same host, since the counter is only
+     * shared through the memory of that host.
+     *
+     * @param file The file holding the counter
+     * @throws IOException If the file can't be opened or mapped
+     */
+    public SharedIdGenerator(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // Mapping beyond the end of the file grows it, and the new bytes are zero
+            this.shared = channel.map(FileChannel.MapMode.READ_WRITE, 0, MAPPED_SIZE);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+
+    /**
+     * Return the next ID-number, unique across every process sharing the
+     * file.
+     *
+     * @return The generated, unique ID
+     */
+    public long nextId() {
+        return (long) LONGS.getAndAdd(shared, COUNTER_OFFSET, 1L);
+    }
+
+
+    /**
+     * Reserves a contiguous block of ID-numbers in a single atomic step. This
+     * can be combined with local, per-thread handout to avoid touching the
+     * shared memory for every ID.
+     *
+     * @param count How many ID-numbers to reserve
+     * @return The first ID-number in the reserved block
+     * @see IdGenerator#reserve(long)
+     */
+    public long reserve(long count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Can't reserve a negative amount of ID's: " + count);
+        }
+        return (long) LONGS.getAndAdd(shared, COUNTER_OFFSET, count);
+    }
+
+
+    /**
+     * Returns the ID-number that will be handed out next, without using it.
+     *
+     * @return The next ID-number
+     */
+    public long peek() {
+        return (long) LONGS.getVolatile(shared, COUNTER_OFFSET);
+    }
+
+
+    /**
+     * Closes the file. The mapping stays valid until it is garbage collected,
+     * but ID's must not be generated after this.
+     *
+     * @throws IOException If the file can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,62 @@
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * An in-process stand-in for a slow {@link IdBackend}, such as a database
+ * sequence, with a configurable latency for every reservation.
+ * <p>
+ * It is meant for tests and benchmarks, where the real backend isn't
+ * available, or where its latency should be controlled.
+ *
+ * @author Christian
+ */
+public final class SimulatedIdBackend implements IdBackend {
+
+    private final AtomicLong counter = new AtomicLong();
+
+    private final AtomicLong reservations = new AtomicLong();
+
+    private final long latencyNanos;
+
+
+    /**
+     * Creates a backend where every reservation takes the given time.
+     *
+     * @param latency How long each reservation takes
+     * @param unit The unit of the latency
+     */
+    public SimulatedIdBackend(long latency, TimeUnit unit) {
+        if (latency < 0) {
+            throw new IllegalArgumentException("The latency can't be negative: " + latency);
+        }
+        this.latencyNanos = unit.toNanos(latency);
+    }
+
+
+    @Override
+    public long reserve(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Can't reserve a negative amount of ID's: " + count);
+        }
+
+        // Park until the full latency has passed, even if woken up early
+        long deadline = System.nanoTime() + latencyNanos;
+        for (long remaining = latencyNanos; remaining > 0; remaining = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(remaining);
+        }
+
+        reservations.incrementAndGet();
+        return counter.getAndAdd(count);
+    }
+
+
+    /**
+     * @return How many reservations have been made
+     */
+    public long getReservations() {
+        return reservations.get();
+    }
+}
@@ -0,0 +1,229 @@
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Generates unique, roughly time-ordered 64-bit ID's that can be created
+ * independently on several nodes, without a database round-trip per ID.
+ * <p>
+ * Each ID packs three fields into a positive {@code long}, from the most to
+ * the least significant bits:
+ * <ul>
+ * <li>{@value #TIMESTAMP_BITS} bits with the milliseconds since the epoch of
+ * the generator</li>
+ * <li>{@value #NODE_BITS} bits with the ID of the node that created it</li>
+ * <li>{@value #SEQUENCE_BITS} bits with a sequence number within that
+ * millisecond</li>
+ * </ul>
+ * As long as every running generator has its own node ID, the ID's are unique
+ * across all of them. Since the timestamp is in the top bits, ID's sort by the
+ * time they were created, and a time range maps to a range of ID's (see
+ * {@link #firstIdAt(long)} and {@link #lastIdAt(long)}).
+ * <p>
+ * The generator is lock-free and safe to use from any number of threads.
+ *
+ * @author Christian
+ */
+public final class SnowflakeIdGenerator {
+
+    public static final int TIMESTAMP_BITS = 41;
+
+    public static final int NODE_BITS = 10;
+
+    public static final int SEQUENCE_BITS = 12;
+
+    /**
+     * The highest node ID that can be used.
+     * <p>
+     * The current value is '{@value #MAX_NODE_ID}'
+     */
+    public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+
+    /**
+     * The default epoch, 2020-01-01T00:00:00Z. With {@value #TIMESTAMP_BITS}
+     * timestamp bits, it lasts until the year 2089.
+     * <p>
+     * The current value is '{@value #DEFAULT_EPOCH}'
+     */
+    public static final long DEFAULT_EPOCH = 1577836800000L;
+
+    /**
+     * How many milliseconds the clock may go backwards before we refuse to
+     * generate ID's, rather than waiting for it to catch up again.
+     * <p>
+     * The current value is '{@value #DEFAULT_MAX_CLOCK_DRIFT}'
+     */
+    public static final long DEFAULT_MAX_CLOCK_DRIFT = 5;
+
+    private static final long MAX_TIMESTAMP = (1L << TIMESTAMP_BITS) - 1;
+
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+
+    private static final int TIMESTAMP_SHIFT = NODE_BITS + SEQUENCE_BITS;
+
+    private final long epoch;
+
+    private final long node;
+
+    private final long maxClockDrift;
+
+    /**
+     * The last ID that was handed out. It holds both the timestamp and the
+     * sequence, so both can be advanced in a single compare-and-set.
+     */
+    private final AtomicLong lastId = new AtomicLong();
+
+
+    /**
+     * Creates a generator for the given node, using the
+     * {@link #DEFAULT_EPOCH default epoch}.
+     *
+     * @param nodeId The ID of this node, between 0 and {@value #MAX_NODE_ID}
+     */
+    public SnowflakeIdGenerator(int nodeId) {
+        this(nodeId, DEFAULT_EPOCH, DEFAULT_MAX_CLOCK_DRIFT);
+    }
+
+
+    /**
+     * Creates a generator for the given node and epoch.
+     * <p>
+     * All nodes sharing an ID space must use the same epoch, and it must never
+     * be changed once ID's have been generated with it.
+     *
+     * @param nodeId The ID of this node, between 0 and {@value #MAX_NODE_ID}
+     * @param epoch The epoch in milliseconds since 1970-01-01T00:00:00Z
+     * @param maxClockDrift How many milliseconds the clock may go backwards
+     * before {@link #nextId()} fails instead of waiting
+     */
+    public SnowflakeIdGenerator(int nodeId, long epoch, long maxClockDrift) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("The node ID must be between 0 and " + MAX_NODE_ID + ": " + nodeId);
+        }
+        if (maxClockDrift < 0) {
+            throw new IllegalArgumentException("The max clock drift can't be negative: " + maxClockDrift);
+        }
+        this.node = nodeId;
+        this.epoch = epoch;
+        this.maxClockDrift = maxClockDrift;
+    }
+
+
+    /**
+     * Generates the next ID for this node.
+     * <p>
+     * If all {@value #SEQUENCE_BITS}-bit sequence numbers of the current
+     * millisecond are used up, this spins until the next millisecond. If the
+     * system clock has gone backwards, it spins until the clock is past the
+     * last used timestamp again, or fails if it went back too far.
+     *
+     * @return The generated, unique ID
+     * @throws IllegalStateException If the clock went backwards by more than
+     * the allowed drift, or the timestamp no longer fits
+     */
+    public long nextId() {
+        while (true) {
+            long last = lastId.get();
+            long lastTimestamp = last >>> TIMESTAMP_SHIFT;
+            long timestamp = currentTimestamp();
+
+            long next;
+            if (timestamp > lastTimestamp) {
+                next = compose(timestamp, 0);
+            } else if (timestamp == lastTimestamp && (last & MAX_SEQUENCE) < MAX_SEQUENCE) {
+                next = last + 1;
+            } else if (lastTimestamp - timestamp > maxClockDrift) {
+                throw new IllegalStateException("The clock went backwards by " + (lastTimestamp - timestamp) + " ms, refusing to generate ID's");
+            } else {
+                // Either the sequence of this millisecond is used up, or the clock went slightly backwards
+                Thread.onSpinWait();
+                continue;
+            }
+
+            if (lastId.compareAndSet(last, next)) {
+                return next;
+            }
+        }
+    }
+
+
+    /**
+     * Extracts the time an ID was generated.
+     *
+     * @param id An ID generated with the same epoch as this generator
+     * @return The timestamp in milliseconds since 1970-01-01T00:00:00Z
+     */
+    public long timestampOf(long id) {
+        return (id >>> TIMESTAMP_SHIFT) + epoch;
+    }
+
+
+    /**
+     * Extracts the ID of the node that generated an ID.
+     *
+     * @param id An ID generated by any node
+     * @return The node ID
+     */
+    public int nodeOf(long id) {
+        return (int) ((id >>> SEQUENCE_BITS) & MAX_NODE_ID);
+    }
+
+
+    /**
+     * Extracts the sequence number of an ID, within the millisecond and node
+     * it was generated on.
+     *
+     * @param id An ID generated by any node
+     * @return The sequence number
+     */
+    public int sequenceOf(long id) {
+        return (int) (id & MAX_SEQUENCE);
+    }
+
+
+    /**
+     * Returns the lowest ID any node can generate during the given
+     * millisecond. Together with {@link #lastIdAt(long)}, a time range can be
+     * turned into a range of ID's, for example to prune partitions.
+     *
+     * @param timestamp The timestamp in milliseconds since
+     * 1970-01-01T00:00:00Z
+     * @return The lowest possible ID at that time
+     */
+    public long firstIdAt(long timestamp) {
+        return toTimestamp(timestamp) << TIMESTAMP_SHIFT;
+    }
+
+
+    /**
+     * Returns the highest ID any node can generate during the given
+     * millisecond.
+     *
+     * @param timestamp The timestamp in milliseconds since
+     * 1970-01-01T00:00:00Z
+     * @return The highest possible ID at that time
+     * @see #firstIdAt(long)
+     */
+    public long lastIdAt(long timestamp) {
+        return firstIdAt(timestamp) | ((1L << TIMESTAMP_SHIFT) - 1);
+    }
+
+
+    private long currentTimestamp() {
+        return toTimestamp(System.currentTimeMillis());
+    }
+
+
+    private long toTimestamp(long millis) {
+        long timestamp = millis - epoch;
+        if (timestamp < 0 || timestamp > MAX_TIMESTAMP) {
+            throw new IllegalStateException("The time " + millis + " is outside the range of the epoch " + epoch);
+        }
+        return timestamp;
+    }
+
+
+    private long compose(long timestamp, long sequence) {
+        return (timestamp << TIMESTAMP_SHIFT) | (node << SEQUENCE_BITS) | sequence;
+    }
+}
@@ -0,0 +1,199 @@
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * A concurrent dictionary that interns strings as dense {@code int} ID's,
+ * assigned in the order the strings are added, starting at 0.
+ * <p>
+ * Data structures holding millions of repeated strings, such as tenant names,
+ * email domains or tags, can store the 4-byte ID instead of a reference to the
+ * string, and look the string up again through {@link #valueOf(int)}, which is
+ * a plain array access. This saves heap and gives the garbage collector fewer
+ * references to follow.
+ * <p>
+ * Looking up a string that has already been added never takes a lock. The
+ * strings are kept in an open-addressing hash table, which is only changed
+ * while holding a lock when a new string is added.
+ *
+ * @author Christian
+ */
+public final class StringIdDictionary {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The table is kept at most half full, and can't grow past 2^30 slots.
+     */
+    private static final int MAX_SIZE = 1 << 29;
+
+    private final Object lock = new Object();
+
+    private volatile Table table = new Table(INITIAL_CAPACITY);
+
+    /**
+     * The strings, indexed by their ID. Replaced by a larger copy when it is
+     * full, and always published before the ID can be found in the table.
+     */
+    private volatile String[] values = new String[INITIAL_CAPACITY];
+
+    private volatile int size;
+
+
+    /**
+     * Creates an empty dictionary.
+     */
+    public StringIdDictionary() {
+    }
+
+
+    /**
+     * Returns the ID of a string, adding it to the dictionary if it hasn't
+     * been added before.
+     *
+     * @param value The string to intern
+     * @return The ID of the string, between 0 and {@link #size()}
+     */
+    public int idOf(String value) {
+        int id = find(value);
+        return id >= 0 ? id : add(value);
+    }
+
+
+    /**
+     * Returns the ID of a string, without adding it to the dictionary.
+     *
+     * @param value The string to look up
+     * @return The ID of the string, or {@code -1} if it hasn't been added
+     */
+    public int find(String value) {
+        Objects.requireNonNull(value, "Can't look up a null value");
+        return table.find(value);
+    }
+
+
+    /**
+     * Returns the string with the given ID.
+     *
+     * @param id The ID of the string
+     * @return The string
+     * @throws IllegalArgumentException If no string has the given ID
+     */
+    public String valueOf(int id) {
+        if (id < 0 || id >= size) {
+            throw new IllegalArgumentException("No value has the ID " + id);
+        }
+        return values[id];
+    }
+
+
+    /**
+     * @return How many strings have been added, which is also the next ID
+     */
+    public int size() {
+        return size;
+    }
+
+
+    private int add(String value) {
+        synchronized (lock) {
+            Table current = table;
+            int id = current.find(value);
+            if (id >= 0) {
+                return id;
+            }
+
+            if (size == MAX_SIZE) {
+                throw new IllegalStateException("The dictionary is full, it can't hold more than " + MAX_SIZE + " values");
+            }
+
+            // Keep the table at most half full, so probe sequences stay short
+            if ((size + 1) * 2L > current.keys.length()) {
+                current = current.resize();
+                table = current;
+            }
+
+            // The next ID is the number of strings so far, which keeps the ID's dense
+            id = size;
+
+            String[] array = values;
+            if (id == array.length) {
+                array = Arrays.copyOf(array, array.length * 2);
+            }
+            array[id] = value;
+            values = array;
+            size = id + 1;
+
+            // The value is published before the ID can be found, so valueOf() always works for a found ID
+            current.put(value, id);
+            return id;
+        }
+    }
+
+
+    /**
+     * An open-addressing hash table from strings to their ID. It only grows by
+     * being replaced with a larger copy, so readers can keep using an old
+     * table without any coordination.
+     */
+    private static final class Table {
+
+        private final AtomicReferenceArray<String> keys;
+
+        private final int[] ids;
+
+        private final int mask;
+
+
+        private Table(int capacity) {
+            this.keys = new AtomicReferenceArray<>(capacity);
+            this.ids = new int[capacity];
+            this.mask = capacity - 1;
+        }
+
+
+        private int find(String value) {
+            for (int slot = slotOf(value); ; slot = (slot + 1) & mask) {
+                String key = keys.get(slot);
+                if (key == null) {
+                    return -1;
+                }
+                if (key.equals(value)) {
+                    // The ID is written before the key, so reading the key makes the ID visible
+                    return ids[slot];
+                }
+            }
+        }
+
+
+        private void put(String value, int id) {
+            int slot = slotOf(value);
+            while (keys.get(slot) != null) {
+                slot = (slot + 1) & mask;
+            }
+            ids[slot] = id;
+            keys.set(slot, value);
+        }
+
+
+        private Table resize() {
+            Table larger = new Table(keys.length() * 2);
+            for (int slot = 0; slot < keys.length(); slot++) {
+                String key = keys.get(slot);
+                if (key != null) {
+                    larger.put(key, ids[slot]);
+                }
+            }
+            return larger;
+        }
+
+
+        private int slotOf(String value) {
+            // Spread the higher bits of the hash downwards, since only the lower bits pick the slot
+            int hash = value.hashCode() * 0x9E3779B9;
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+    }
+}
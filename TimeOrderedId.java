@@ -0,0 +1,395 @@
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Generates 128-bit, time-sortable identifiers in the ULID and UUID version 7
+ * formats.
+ * <p>
+ * Both formats start with a 48-bit timestamp in milliseconds, so new
+ * identifiers are always inserted at the end of a B-tree index, instead of at
+ * random positions like {@link UUID#randomUUID()}. Identifiers generated in
+ * the same millisecond are still strictly increasing, since a counter in the
+ * bits following the timestamp is incremented for each of them. If the counter
+ * overflows, or the clock goes backwards, the timestamp is advanced past the
+ * last one used instead.
+ * <p>
+ * An identifier is handled as its two {@code long} halves, which can be
+ * generated, encoded and parsed without creating any objects. The random bits
+ * are not cryptographically strong, so these identifiers must not be used as
+ * secret tokens; use {@link Security#generateToken()} for that.
+ *
+ * @author Christian
+ */
+public final class TimeOrderedId {
+
+    /**
+     * The length of a ULID in its textual form.
+     * <p>
+     * The current value is '{@value #ULID_LENGTH}'
+     */
+    public static final int ULID_LENGTH = 26;
+
+    /**
+     * The length of a UUID in its textual form.
+     * <p>
+     * The current value is '{@value #UUID_LENGTH}'
+     */
+    public static final int UUID_LENGTH = 36;
+
+    /**
+     * The length of either identifier in its binary form.
+     * <p>
+     * The current value is '{@value #BINARY_LENGTH}'
+     */
+    public static final int BINARY_LENGTH = 16;
+
+    private static final char[] HEX_ALPHABET = "0123456789abcdef".toCharArray();
+
+    private static final int TIMESTAMP_SHIFT = 16;
+
+    private static final long ULID_COUNTER_MASK = 0xFFFFL;
+
+    private static final long UUID_COUNTER_MASK = 0x0FFFL;
+
+    private static final long UUID_VERSION = 0x7000L;
+
+    private static final long UUID_VARIANT = 0x8000000000000000L;
+
+    private static final long UUID_VARIANT_MASK = 0x3FFFFFFFFFFFFFFFL;
+
+    private static final AtomicLong LAST_ULID = new AtomicLong();
+
+    private static final AtomicLong LAST_UUID = new AtomicLong();
+
+
+    /**
+     * Generates a new ULID as text.
+     *
+     * @return The generated ULID
+     * @see #nextUlid(long[], int)
+     */
+    public static final String ulid() {
+        long[] halves = new long[2];
+        nextUlid(halves, 0);
+        char[] text = new char[ULID_LENGTH];
+        encodeUlid(halves[0], halves[1], text, 0);
+        return new String(text);
+    }
+
+
+    /**
+     * Generates a new UUID version 7.
+     *
+     * @return The generated UUID
+     * @see #nextUuidV7(long[], int)
+     */
+    public static final UUID uuidV7() {
+        long[] halves = new long[2];
+        nextUuidV7(halves, 0);
+        return new UUID(halves[0], halves[1]);
+    }
+
+
+    /**
+     * Generates a new ULID without creating any objects.
+     *
+     * @param target The array to write the ULID to
+     * @param offset Where to write the most significant half, the least
+     * significant half is written right after it
+     */
+    public static final void nextUlid(long[] target, int offset) {
+        target[offset] = nextMostSignificantBits(LAST_ULID, ULID_COUNTER_MASK, 0);
+        target[offset + 1] = ThreadLocalRandom.current().nextLong();
+    }
+
+
+    /**
+     * Generates a new UUID version 7 without creating any objects.
+     * <p>
+     * The 12 bits following the timestamp hold the counter that keeps the
+     * UUID's of a single millisecond increasing, as described in RFC 9562.
+     *
+     * @param target The array to write the UUID to
+     * @param offset Where to write the most significant half, the least
+     * significant half is written right after it
+     */
+    public static final void nextUuidV7(long[] target, int offset) {
+        target[offset] = nextMostSignificantBits(LAST_UUID, UUID_COUNTER_MASK, UUID_VERSION);
+        target[offset + 1] = (ThreadLocalRandom.current().nextLong() & UUID_VARIANT_MASK) | UUID_VARIANT;
+    }
+
+
+    /**
+     * Advances the timestamp and counter shared by all identifiers of one
+     * format, using a compare-and-set so that no lock is needed.
+     *
+     * @param last The most significant half of the last identifier
+     * @param counterMask The bits holding the counter
+     * @param version Fixed bits to set next to the counter
+     * @return The most significant half of the next identifier
+     */
+    private static long nextMostSignificantBits(AtomicLong last, long counterMask, long version) {
+        while (true) {
+            long previous = last.get();
+            long previousTimestamp = previous >>> TIMESTAMP_SHIFT;
+            long timestamp = System.currentTimeMillis();
+
+            long next;
+            if (timestamp > previousTimestamp) {
+                next = (timestamp << TIMESTAMP_SHIFT) | version | randomCounter(counterMask);
+            } else if ((previous & counterMask) < counterMask) {
+                next = previous + 1;
+            } else {
+                next = ((previousTimestamp + 1) << TIMESTAMP_SHIFT) | version | randomCounter(counterMask);
+            }
+
+            if (last.compareAndSet(previous, next)) {
+                return next;
+            }
+        }
+    }
+
+
+    /**
+     * Picks a random starting point for the counter of a new millisecond,
+     * leaving at least half of the counter free for increments.
+     */
+    private static long randomCounter(long counterMask) {
+        return ThreadLocalRandom.current().nextLong() & (counterMask >>> 1);
+    }
+
+
+    /**
+     * Extracts the time an identifier was generated. Works for both formats.
+     *
+     * @param mostSignificantBits The most significant half of the identifier
+     * @return The timestamp in milliseconds since 1970-01-01T00:00:00Z
+     */
+    public static final long timestampOf(long mostSignificantBits) {
+        return mostSignificantBits >>> TIMESTAMP_SHIFT;
+    }
+
+
+    /**
+     * Writes an identifier as a ULID, using Crockford's Base32.
+     *
+     * @param mostSignificantBits The most significant half of the identifier
+     * @param leastSignificantBits The least significant half of the identifier
+     * @param target The array to write the {@value #ULID_LENGTH} characters to
+     * @param offset The index of the first character
+     * @return The index right after the last written character
+     */
+    public static final int encodeUlid(long mostSignificantBits, long leastSignificantBits, char[] target, int offset) {
+        // 26 characters hold 130 bits, so the first one only holds the top 3 bits
+        target[offset] = IdEncoding.CROCKFORD_ALPHABET[(int) (mostSignificantBits >>> 61)];
+        for (int i = 1; i < ULID_LENGTH; i++) {
+            int shift = 125 - i * 5;
+            target[offset + i] = IdEncoding.CROCKFORD_ALPHABET[bitsAt(mostSignificantBits, leastSignificantBits, shift)];
+        }
+        return offset + ULID_LENGTH;
+    }
+
+
+    /**
+     * Extracts 5 bits of a 128-bit value, starting at the given bit.
+     */
+    private static int bitsAt(long high, long low, int shift) {
+        long bits;
+        if (shift >= Long.SIZE) {
+            bits = high >>> (shift - Long.SIZE);
+        } else if (shift > Long.SIZE - 5) {
+            bits = (high << (Long.SIZE - shift)) | (low >>> shift);
+        } else {
+            bits = low >>> shift;
+        }
+        return (int) (bits & 0x1F);
+    }
+
+
+    /**
+     * Writes an identifier in the standard UUID format, such as
+     * {@code 0188f3a2-6b1e-7c3d-9f00-5a1b2c3d4e5f}.
+     *
+     * @param mostSignificantBits The most significant half of the identifier
+     * @param leastSignificantBits The least significant half of the identifier
+     * @param target The array to write the {@value #UUID_LENGTH} characters to
+     * @param offset The index of the first character
+     * @return The index right after the last written character
+     */
+    public static final int encodeUuid(long mostSignificantBits, long leastSignificantBits, char[] target, int offset) {
+        writeHex(mostSignificantBits >>> 32, 8, target, offset);
+        target[offset + 8] = '-';
+        writeHex(mostSignificantBits >>> 16, 4, target, offset + 9);
+        target[offset + 13] = '-';
+        writeHex(mostSignificantBits, 4, target, offset + 14);
+        target[offset + 18] = '-';
+        writeHex(leastSignificantBits >>> 48, 4, target, offset + 19);
+        target[offset + 23] = '-';
+        writeHex(leastSignificantBits, 12, target, offset + 24);
+        return offset + UUID_LENGTH;
+    }
+
+
+    private static void writeHex(long value, int digits, char[] target, int offset) {
+        for (int i = digits - 1; i >= 0; i--) {
+            target[offset + i] = HEX_ALPHABET[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+    }
+
+
+    /**
+     * Writes an identifier in its big-endian binary form, which sorts the same
+     * way as the identifiers themselves.
+     *
+     * @param mostSignificantBits The most significant half of the identifier
+     * @param leastSignificantBits The least significant half of the identifier
+     * @param target The array to write the {@value #BINARY_LENGTH} bytes to
+     * @param offset The index of the first byte
+     * @return The index right after the last written byte
+     */
+    public static final int encodeBytes(long mostSignificantBits, long leastSignificantBits, byte[] target, int offset) {
+        for (int i = 0; i < Long.BYTES; i++) {
+            target[offset + i] = (byte) (mostSignificantBits >>> (56 - i * 8));
+            target[offset + Long.BYTES + i] = (byte) (leastSignificantBits >>> (56 - i * 8));
+        }
+        return offset + BINARY_LENGTH;
+    }
+
+
+    /**
+     * Reads the most significant half of a ULID.
+     *
+     * @param text The text containing the ULID
+     * @param offset The index of the first character of the ULID
+     * @return The most significant half of the identifier
+     * @throws IllegalArgumentException If the text doesn't contain a valid
+     * ULID at that position
+     */
+    public static final long parseUlidMostSignificantBits(CharSequence text, int offset) {
+        // The first character holds 3 bits and the next 12 hold 60, so the last bit comes from the 14th character
+        long bits = crockfordValue(text, offset);
+        if (bits > 7) {
+            throw new IllegalArgumentException("Not a valid ULID, it is out of range: " + text);
+        }
+        for (int i = 1; i < 13; i++) {
+            bits = (bits << 5) | crockfordValue(text, offset + i);
+        }
+        return (bits << 1) | (crockfordValue(text, offset + 13) >>> 4);
+    }
+
+
+    /**
+     * Reads the least significant half of a ULID.
+     *
+     * @param text The text containing the ULID
+     * @param offset The index of the first character of the ULID
+     * @return The least significant half of the identifier
+     * @throws IllegalArgumentException If the text doesn't contain a valid
+     * ULID at that position
+     */
+    public static final long parseUlidLeastSignificantBits(CharSequence text, int offset) {
+        long bits = crockfordValue(text, offset + 13) & 0xF;
+        for (int i = 14; i < ULID_LENGTH; i++) {
+            bits = (bits << 5) | crockfordValue(text, offset + i);
+        }
+        return bits;
+    }
+
+
+    private static long crockfordValue(CharSequence text, int index) {
+        char c = text.charAt(index);
+        int value = c < IdEncoding.CROCKFORD_VALUES.length ? IdEncoding.CROCKFORD_VALUES[c] : -1;
+        if (value < 0) {
+            throw new IllegalArgumentException("Not a valid ULID, invalid character '" + c + "' at index " + index);
+        }
+        return value;
+    }
+
+
+    /**
+     * Reads the most significant half of a UUID in the standard format.
+     *
+     * @param text The text containing the UUID
+     * @param offset The index of the first character of the UUID
+     * @return The most significant half of the identifier
+     * @throws IllegalArgumentException If the text doesn't contain a valid
+     * UUID at that position
+     */
+    public static final long parseUuidMostSignificantBits(CharSequence text, int offset) {
+        checkUuidDashes(text, offset);
+        return (readHex(text, offset, 8) << 32) | (readHex(text, offset + 9, 4) << 16) | readHex(text, offset + 14, 4);
+    }
+
+
+    /**
+     * Reads the least significant half of a UUID in the standard format.
+     *
+     * @param text The text containing the UUID
+     * @param offset The index of the first character of the UUID
+     * @return The least significant half of the identifier
+     * @throws IllegalArgumentException If the text doesn't contain a valid
+     * UUID at that position
+     */
+    public static final long parseUuidLeastSignificantBits(CharSequence text, int offset) {
+        checkUuidDashes(text, offset);
+        return (readHex(text, offset + 19, 4) << 48) | readHex(text, offset + 24, 12);
+    }
+
+
+    private static void checkUuidDashes(CharSequence text, int offset) {
+        if (text.charAt(offset + 8) != '-' || text.charAt(offset + 13) != '-'
+                || text.charAt(offset + 18) != '-' || text.charAt(offset + 23) != '-') {
+            throw new IllegalArgumentException("Not a valid UUID, the dashes are misplaced: " + text);
+        }
+    }
+
+
+    private static long readHex(CharSequence text, int offset, int digits) {
+        long value = 0;
+        for (int i = offset; i < offset + digits; i++) {
+            int digit = Character.digit(text.charAt(i), 16);
+            if (digit < 0) {
+                throw new IllegalArgumentException("Not a valid UUID, invalid character '" + text.charAt(i) + "' at index " + i);
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+
+    /**
+     * Reads the most significant half of an identifier in its binary form.
+     *
+     * @param source The array containing the identifier
+     * @param offset The index of the first byte of the identifier
+     * @return The most significant half of the identifier
+     */
+    public static final long mostSignificantBits(byte[] source, int offset) {
+        return readLong(source, offset);
+    }
+
+
+    /**
+     * Reads the least significant half of an identifier in its binary form.
+     *
+     * @param source The array containing the identifier
+     * @param offset The index of the first byte of the identifier
+     * @return The least significant half of the identifier
+     */
+    public static final long leastSignificantBits(byte[] source, int offset) {
+        return readLong(source, offset + Long.BYTES);
+    }
+
+
+    private static long readLong(byte[] source, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + Long.BYTES; i++) {
+            value = (value << 8) | (source[i] & 0xFF);
+        }
+        return value;
+    }
+}
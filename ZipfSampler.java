@@ -0,0 +1,180 @@
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+
+/**
+ * Picks random indexes following Zipf's law, where a few indexes are picked
+ * very often and most are picked rarely, as with the popularity of keys in a
+ * cache or of pages on a website.
+ * <p>
+ * Index {@code k}, from {@code 0} up to the number of elements, is picked with
+ * a probability proportional to {@code 1 / (k + 1)^exponent}, so index 0 is
+ * the most popular one. The sampler uses the rejection-inversion method of
+ * Hormann and Derflinger, with the constants for the number of elements and
+ * the exponent computed once. A pick then takes about one random number, a
+ * logarithm and an exponent, for any number of elements, and nothing is
+ * allocated. The sampler is safe to use from any number of threads.
+ *
+ * @author Christian
+ */
+public final class ZipfSampler {
+
+    private final int numberOfElements;
+
+    private final double exponent;
+
+    private final double hIntegralX1;
+
+    private final double hIntegralNumberOfElements;
+
+    /**
+     * How far below an integer the inverse may land, while still certainly
+     * being under the histogram of that integer.
+     */
+    private final double s;
+
+
+    /**
+     * Creates a sampler for the given number of elements and exponent.
+     *
+     * @param numberOfElements How many indexes to pick from
+     * @param exponent How strongly the low indexes are preferred, which must
+     * be positive; 1.0 gives the classic Zipf distribution
+     */
+    public ZipfSampler(int numberOfElements, double exponent) {
+        if (numberOfElements <= 0) {
+            throw new IllegalArgumentException("The number of elements must be positive: " + numberOfElements);
+        }
+        if (!(exponent > 0) || Double.isInfinite(exponent)) {
+            throw new IllegalArgumentException("Invalid exponent: " + exponent);
+        }
+
+        this.numberOfElements = numberOfElements;
+        this.exponent = exponent;
+        this.hIntegralX1 = hIntegral(1.5) - 1.0;
+        this.hIntegralNumberOfElements = hIntegral(numberOfElements + 0.5);
+        this.s = 2.0 - hIntegralInverse(hIntegral(2.5) - h(2));
+    }
+
+
+    /**
+     * Picks a random index, using the random generator of the current thread.
+     *
+     * @return An index, from 0 up to the number of elements
+     */
+    public int sample() {
+        return sample(ThreadLocalRandom.current());
+    }
+
+
+    /**
+     * Picks a random index, using the given random generator.
+     *
+     * @param random The generator to draw from
+     * @return An index, from 0 up to the number of elements
+     */
+    public int sample(Random random) {
+        while (true) {
+            // Uniform over the area under the hat function, from the right end to the left
+            double u = hIntegralNumberOfElements + random.nextDouble() * (hIntegralX1 - hIntegralNumberOfElements);
+            double x = hIntegralInverse(u);
+
+            int k = (int) (x + 0.5);
+            if (k < 1) {
+                k = 1;
+            } else if (k > numberOfElements) {
+                k = numberOfElements;
+            }
+
+            // Accept right away when certainly under the histogram, and otherwise check it exactly
+            if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+                return k - 1;
+            }
+        }
+    }
+
+
+    /**
+     * Fills an array with random indexes.
+     *
+     * @param target The array to fill
+     * @see #sample()
+     */
+    public void fill(int[] target) {
+        Random random = ThreadLocalRandom.current();
+        for (int i = 0; i < target.length; i++) {
+            target[i] = sample(random);
+        }
+    }
+
+
+    /**
+     * @return How many indexes the sampler picks from
+     */
+    public int getNumberOfElements() {
+        return numberOfElements;
+    }
+
+
+    /**
+     * @return How strongly the low indexes are preferred
+     */
+    public double getExponent() {
+        return exponent;
+    }
+
+
+    /**
+     * The integral of the hat function, {@code ((x^(1 - exponent)) - 1) /
+     * (1 - exponent)}, written so it stays accurate when the exponent is
+     * close to 1.
+     */
+    private double hIntegral(double x) {
+        double logX = Math.log(x);
+        return expm1OverX((1.0 - exponent) * logX) * logX;
+    }
+
+
+    /**
+     * The hat function, {@code x^-exponent}.
+     */
+    private double h(double x) {
+        return Math.exp(-exponent * Math.log(x));
+    }
+
+
+    /**
+     * The inverse of {@link #hIntegral(double)}.
+     */
+    private double hIntegralInverse(double x) {
+        double t = x * (1.0 - exponent);
+        if (t < -1.0) {
+            // Rounding can go past the limit of the domain
+            t = -1.0;
+        }
+        return Math.exp(log1pOverX(t) * x);
+    }
+
+
+    /**
+     * {@code log(1 + x) / x}, with its Taylor series near 0.
+     */
+    private static double log1pOverX(double x) {
+        if (Math.abs(x) > 1e-8) {
+            return Math.log1p(x) / x;
+        }
+        return 1.0 - x * (0.5 - x * (1.0 / 3.0 - x * 0.25));
+    }
+
+
+    /**
+     * {@code (exp(x) - 1) / x}, with its Taylor series near 0.
+     */
+    private static double expm1OverX(double x) {
+        if (Math.abs(x) > 1e-8) {
+            return Math.expm1(x) / x;
+        }
+        return 1.0 + x * 0.5 * (1.0 + x / 3.0 * (1.0 + x * 0.25));
+    }
+}